@@ -23,6 +23,26 @@ ei_impulse_result_t result = { 0 };
 
 // JSON bin API endpoint and API key
 const char PROGMEM bin_url[] = "https://api.jsonbin.io/v3/b/67e592e08a456b79667de663";
+// Detections go straight to the JSON bin unless the self-hosted bin server (server/ in the app
+// repository, ./gradlew :server:run) is deployed; then define its URL in secrets.h, e.g.
+// #define INGEST_URL "http://<host>:<port>/v3/b/local/detections"
+#ifdef INGEST_URL
+const char PROGMEM ingest_url[] = INGEST_URL;
+#endif
+// Sensor readings stream to the TelemetryServer hosted by the phone running the app, one
+// persistent connection per drone. Define the phone's address on the shared Wi-Fi network in
+// secrets.h to enable it, together with the drone key the app was built with, e.g.
+// #define TELEMETRY_HOST "192.168.1.23"
+// #define TELEMETRY_KEY "<key>"
+#ifndef TELEMETRY_PORT
+#define TELEMETRY_PORT 9090
+#endif
+#ifdef TELEMETRY_HOST
+#ifndef TELEMETRY_KEY
+#error "TELEMETRY_HOST needs the drone key, define TELEMETRY_KEY in secrets.h"
+#endif
+WiFiClient telemetry;
+#endif
 const char PROGMEM apiKey[] = "$2a$10$0wL/3asdNJyr/YV4j8IZdePui4RlgGAySCYfSwJnZK44KNoo51raO";
 
 void setup() {
@@ -168,18 +188,143 @@ void loop() {
   Serial.println("MQ135 reading: " + String(gasReading) + " PPM");
   Serial.println();
 
+#ifdef TELEMETRY_HOST
+  sendTelemetry(h, t, gasReading, 43.0075, -81.2763);
+#endif
+
   char sensorVals[64];
   sprintf(sensorVals, "\nHumidity: %.0f%%\nTemperature %.2fC\nCO2: %.2f PPM", h, t, gasReading);
 
   String label = classify();
   Serial.printf("Classification Result: %s\n\n", label.c_str());
   if (label=="cat") {
-    addPOI("hazard", "BIG CAT", sensorVals, 43.0075, -81.2763);
+    reportHazard("BIG CAT", sensorVals, 43.0075, -81.2763);
   } else if (label=="dog") {
-    addPOI("hazard", "BIG DOG", sensorVals, 43.0075, -81.2763);
+    reportHazard("BIG DOG", sensorVals, 43.0075, -81.2763);
+  }
+
+}
+
+#ifdef TELEMETRY_HOST
+// Big-endian helpers for the telemetry frame
+size_t putU32(uint8_t *out, size_t i, uint32_t v) {
+  out[i] = v >> 24; out[i + 1] = v >> 16; out[i + 2] = v >> 8; out[i + 3] = v;
+  return i + 4;
+}
+
+size_t putFloat(uint8_t *out, size_t i, float f) {
+  uint32_t bits;
+  memcpy(&bits, &f, sizeof(bits));
+  return putU32(out, i, bits);
+}
+
+// Streams one binary sensor frame (see TelemetryReading.java) over the kept-open connection
+void sendTelemetry(float h, float t, float co2, float lat, float lon) {
+  if (WiFi.status() != WL_CONNECTED) return;
+  if (!telemetry.connected()) {
+    telemetry.stop();
+    if (!telemetry.connect(TELEMETRY_HOST, TELEMETRY_PORT)) {
+      Serial.println("Telemetry connection failed");
+      return;
+    }
+    telemetry.setNoDelay(true);
+    // The server drops connections that do not open with the drone key
+    size_t keyLength = strlen(TELEMETRY_KEY);
+    uint8_t auth[3 + 64];
+    if (keyLength > 64) {
+      Serial.println("Telemetry key too long");
+      telemetry.stop();
+      return;
+    }
+    auth[0] = (1 + keyLength) >> 8;
+    auth[1] = (1 + keyLength) & 0xFF;
+    auth[2] = 0xA5;  // Auth frame
+    memcpy(auth + 3, TELEMETRY_KEY, keyLength);
+    if (telemetry.write(auth, 3 + keyLength) != 3 + keyLength) {
+      Serial.println("Telemetry auth failed");
+      telemetry.stop();
+      return;
+    }
   }
 
+  uint8_t frame[2 + 33];
+  size_t i = 0;
+  frame[i++] = 0;
+  frame[i++] = 33;  // Body length
+  frame[i++] = 1;   // Version
+  i = putU32(frame, i, (uint32_t) ESP.getEfuseMac());
+  i = putU32(frame, i, 0);  // No RTC, so the server stamps the sample time
+  i = putU32(frame, i, 0);
+  i = putFloat(frame, i, lat);
+  i = putFloat(frame, i, lon);
+  i = putFloat(frame, i, h);
+  i = putFloat(frame, i, t);
+  i = putFloat(frame, i, co2);
+
+  if (telemetry.write(frame, i) != i) {
+    Serial.println("Telemetry write failed, reconnecting next time");
+    telemetry.stop();
+  }
+}
+#endif
+
+// Random RFC 4122 version 4 id, the same format the app generates
+String generateId() {
+  uint8_t bytes[16];
+  esp_fill_random(bytes, sizeof(bytes));
+  bytes[6] = (bytes[6] & 0x0F) | 0x40;
+  bytes[8] = (bytes[8] & 0x3F) | 0x80;
+
+  char id[37];
+  snprintf(id, sizeof(id), "%02x%02x%02x%02x-%02x%02x-%02x%02x-%02x%02x-%02x%02x%02x%02x%02x%02x",
+           bytes[0], bytes[1], bytes[2], bytes[3], bytes[4], bytes[5], bytes[6], bytes[7],
+           bytes[8], bytes[9], bytes[10], bytes[11], bytes[12], bytes[13], bytes[14], bytes[15]);
+  return String(id);
+}
+
+void reportHazard(String title, String description, float lat, float lon) {
+#ifdef INGEST_URL
+  reportDetection("hazard", title, description, lat, lon);
+#else
+  addPOI("hazard", title, description, lat, lon);
+#endif
+}
+
+#ifdef INGEST_URL
+// Reports a detection to the ingestion service, which merges repeat sightings of the same
+// hazard server-side, so the drone never has to download the whole bin
+void reportDetection(String type, String title, String description, float lat, float lon) {
+  if (WiFi.status() != WL_CONNECTED) {
+    Serial.println("WiFi not connected");
+    return;
+  }
+
+  StaticJsonDocument<384> detection;
+  // Only used if this turns out to be a new hazard
+  detection["id"] = generateId();
+  detection["type"] = type;
+  detection["title"] = title;
+  detection["description"] = description;
+  detection["latitude"] = lat;
+  detection["longitude"] = lon;
+
+  String body;
+  serializeJson(detection, body);
+
+  HTTPClient http;
+  http.begin(ingest_url);
+  http.addHeader("Content-Type", "application/json");
+  http.addHeader("X-Master-Key", apiKey);
+
+  int httpResponseCode = http.POST(body);
+  if (httpResponseCode == 200) {
+    Serial.println("Detection reported: " + http.getString());
+  } else {
+    Serial.println("Error reporting detection: " + String(httpResponseCode));
+  }
+  http.end();
 }
+#endif
 
 // Function to add a POI to the JSON bin, avoiding duplicates
 void addPOI(String type, String title, String description, float lat, float lon) {
@@ -222,6 +367,7 @@ void addPOI(String type, String title, String description, float lat, float lon)
       // If POI doesn't exist, add it
       Serial.println("Adding new POI...");
       JsonObject newPoi = points.createNestedObject();
+      newPoi["id"] = generateId();
       newPoi["type"] = type;
       newPoi["title"] = title;
       newPoi["description"] = description;
@@ -0,0 +1,97 @@
+package com.here.routing;
+
+import android.annotation.SuppressLint;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the old fetch path (JSONObject, toString, new Gson, parse again) with
+ * {@link PoiFeedParser} on a synthetic feed and logs the timings. Both paths must agree on
+ * the points; the numbers are for reading, not asserting, since they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FeedParseBenchmarkTest {
+    private static final String TAG = FeedParseBenchmarkTest.class.getSimpleName();
+    private static final int POINTS = 5000, ITERATIONS = 10;
+
+    @Test
+    @SuppressLint("DefaultLocale")
+    public void streamingParseMatchesLegacy() throws Exception {
+        byte[] feed = syntheticFeed(POINTS);
+
+        // Warm up both paths once so class loading and JIT do not skew the first run
+        List<PointOfInterest> legacy = parseLegacy(feed);
+        List<PointOfInterest> streamed = PoiFeedParser.parseFeed(new ByteArrayInputStream(feed));
+        assertEquals(legacy, streamed);
+
+        long legacyNanos = 0, legacyBytes = 0, streamingNanos = 0, streamingBytes = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long before = usedHeap();
+            long start = System.nanoTime();
+            parseLegacy(feed);
+            legacyNanos += System.nanoTime() - start;
+            legacyBytes += Math.max(0, usedHeap() - before);
+
+            before = usedHeap();
+            start = System.nanoTime();
+            PoiFeedParser.parseFeed(new ByteArrayInputStream(feed));
+            streamingNanos += System.nanoTime() - start;
+            streamingBytes += Math.max(0, usedHeap() - before);
+        }
+
+        String result = String.format("%d points, %d KB feed: legacy %.1f ms / ~%d KB, streaming %.1f ms / ~%d KB",
+                POINTS, feed.length / 1024,
+                legacyNanos / 1e6 / ITERATIONS, legacyBytes / 1024 / ITERATIONS,
+                streamingNanos / 1e6 / ITERATIONS, streamingBytes / 1024 / ITERATIONS);
+        Log.d(TAG, result);
+    }
+
+    // The fetch path as it was before PoiFeedParser
+    private static List<PointOfInterest> parseLegacy(byte[] feed) throws Exception {
+        JSONObject response = new JSONObject(new String(feed, StandardCharsets.UTF_8));
+        JSONObject record = response.getJSONObject("record");
+        String jsonArray = record.getJSONArray("points").toString();
+
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapter(PointOfInterest.class, new PointOfInterestDeserializer())
+                .create();
+        Type listType = new TypeToken<ArrayList<PointOfInterest>>() {}.getType();
+        return gson.fromJson(jsonArray, listType);
+    }
+
+    private static byte[] syntheticFeed(int pointCount) {
+        StringBuilder json = new StringBuilder("{\"record\":{\"points\":[");
+        for (int i = 0; i < pointCount; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"type\":\"").append(i % 4 == 0 ? "people" : "hazard")
+                    .append("\",\"title\":\"Report ").append(i)
+                    .append("\",\"description\":\"Humidity: 40%\\nTemperature 21.50C\\nCO2: 412.00 PPM\"")
+                    .append(",\"coordinates\":{\"latitude\":").append(42.95 + (i % 100) * 0.001)
+                    .append(",\"longitude\":").append(-81.30 + (i / 100) * 0.001)
+                    .append("},\"userSubmitted\":").append(i % 2 == 0).append('}');
+        }
+        json.append("]},\"metadata\":{\"id\":\"benchmark\",\"private\":true}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
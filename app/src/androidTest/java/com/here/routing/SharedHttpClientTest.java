@@ -0,0 +1,105 @@
+package com.here.routing;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.here.routing.server.LocalBinServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the bin read/write path against a {@link LocalBinServer} and checks that repeated
+ * fetches are answered from the ETag cache until a write invalidates it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SharedHttpClientTest {
+    private static final String TAG = SharedHttpClientTest.class.getSimpleName();
+    private static final int POINTS = 500, FETCHES = 20;
+
+    private LocalBinServer server;
+    private SharedHttpClient client;
+    private SharedHttpClient.Config previous;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalBinServer();
+        server.setPoints(syntheticPoints(POINTS));
+        client = SharedHttpClient.get();
+        previous = client.getConfig();
+        client.setConfig(new SharedHttpClient.Config(2000, 2000, 2, 100, true));
+    }
+
+    @After
+    public void tearDown() {
+        client.setConfig(previous);
+        client.clearCache();
+        server.stop();
+    }
+
+    @Test
+    public void fetchesAreConditionalUntilAWrite() throws Exception {
+        String url = server.getUrl();
+
+        // The first fetch downloads the feed, the rest should all be 304s on one connection
+        int downloaded = 0;
+        for (int i = 0; i < FETCHES; i++) {
+            SharedHttpClient.Response response = client.get(url, Collections.emptyMap());
+            assertTrue(response.isSuccessful());
+            if (!response.notModified) downloaded++;
+        }
+        assertEquals(1, downloaded);
+
+        // A write invalidates the ETag, so the next fetch downloads again
+        JsonApi.applyOperations(url, Collections.singletonList(SyncOperation.remove("check", "check-0")));
+        SharedHttpClient.Response refetched = client.get(url, Collections.emptyMap());
+        assertFalse(refetched.notModified);
+        assertEquals(POINTS - 1, PoiFeedParser.parseFeed(new ByteArrayInputStream(refetched.body)).size());
+
+        Log.d(TAG, "client[" + client.getStats() + "] server[" + server.getStats() + "]");
+    }
+
+    @Test
+    public void notModifiedWithoutCachedBodyIsFetchedAgain() throws Exception {
+        String url = server.getUrl();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        String etag = connection.getHeaderField("ETag");
+        connection.getInputStream().close();
+
+        // A validator the client has no body for must not end in an empty 304
+        SharedHttpClient.Response response = client.get(url, Collections.singletonMap("If-None-Match", etag));
+        assertTrue(response.isSuccessful());
+        assertTrue(response.body.length > 0);
+    }
+
+    private static JsonArray syntheticPoints(int count) {
+        JsonArray points = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            JsonObject coordinates = new JsonObject();
+            coordinates.addProperty("latitude", 42.98 + i * 1e-4);
+            coordinates.addProperty("longitude", -81.24);
+            JsonObject poi = new JsonObject();
+            poi.addProperty("id", "check-" + i);
+            poi.addProperty("type", "hazard");
+            poi.addProperty("title", "Hazard " + i);
+            poi.addProperty("description", "Synthetic point");
+            poi.add("coordinates", coordinates);
+            poi.addProperty("userSubmitted", false);
+            points.add(poi);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,199 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the route being driven for hazards that appear on it. The route's polyline is kept
+ * in a {@link RouteSegmentIndex}, and every hazard added to or moved in the store is checked
+ * against its corridor. Hits are debounced: the reroute waits for a quiet period after the
+ * last hit (but never longer than a fixed cap after the first), so a burst of reports from
+ * one incident asks for a single new route.
+ *
+ * Filtered positions of the user are matched to the route as well, to track how far along
+ * it they are; a user who left the route for a few consecutive positions gets a new route
+ * from where they are.
+ */
+public class ActiveRouteMonitor implements PoiStore.ChangeListener {
+    private static final String TAG = ActiveRouteMonitor.class.getSimpleName();
+    // Positions further than this from the route count as off it
+    private static final double OFF_ROUTE_METERS = 50;
+    private static final int OFF_ROUTE_POSITIONS = 2;
+    // Positions are matched to segments just behind and ahead of the last match first
+    private static final int MATCH_BEHIND = 2, MATCH_AHEAD = 100;
+
+    public interface Rerouter {
+        // Called on the monitor thread with the hazards that hit the route since the last call,
+        // or with none if the user left the route
+        void reroute(List<PointOfInterest> hazards);
+    }
+
+    private final PoiStore store;
+    private final double corridorMeters;
+    private final long quietMillis, maxDelayMillis;
+    private final Rerouter rerouter;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    // Guarded by this
+    private RouteSegmentIndex index;
+    private List<GeoCoordinates> polyline;
+    private double[] distanceAlong;
+    private int matchedSegment, offRoutePositions;
+    private double remainingMeters;
+    private PointOfInterest destination;
+    private final List<PointOfInterest> hits = new ArrayList<>();
+    private ScheduledFuture<?> pending;
+    private long firstHitAt;
+
+    public ActiveRouteMonitor(PoiStore store, double corridorMeters, long quietMillis, long maxDelayMillis, Rerouter rerouter) {
+        this.store = store;
+        this.corridorMeters = corridorMeters;
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.rerouter = rerouter;
+        store.addListener(this);
+    }
+
+    /**
+     * Starts watching a new route. Hazards already known were considered when it was
+     * planned, so only later reports count. The hazard at {@code destination} is ignored.
+     */
+    public synchronized void watch(List<GeoCoordinates> polyline, PointOfInterest destination) {
+        index = new RouteSegmentIndex(polyline, corridorMeters);
+        this.polyline = polyline;
+        this.destination = destination;
+        distanceAlong = new double[polyline.size()];
+        for (int i = 1; i < polyline.size(); i++) {
+            distanceAlong[i] = distanceAlong[i - 1] + GeoMath.distanceMeters(polyline.get(i - 1), polyline.get(i));
+        }
+        remainingMeters = polyline.isEmpty() ? 0 : distanceAlong[polyline.size() - 1];
+        matchedSegment = 0;
+        offRoutePositions = 0;
+        cancelPending();
+    }
+
+    public synchronized void stop() {
+        index = null;
+        polyline = null;
+        destination = null;
+        cancelPending();
+    }
+
+    /** Matches a filtered position of the user to the route. */
+    public synchronized void onPosition(GeoCoordinates position) {
+        if (polyline == null || polyline.size() < 2) return;
+        int segments = polyline.size() - 1;
+        int best = nearestSegment(position, Math.max(0, matchedSegment - MATCH_BEHIND),
+                Math.min(segments, matchedSegment + MATCH_AHEAD));
+        double distance = distanceToSegment(position, best);
+        if (distance > OFF_ROUTE_METERS) {
+            // Fixes can skip ahead after a tunnel or a pause, look at the whole route once
+            best = nearestSegment(position, 0, segments);
+            distance = distanceToSegment(position, best);
+        }
+
+        if (distance <= OFF_ROUTE_METERS) {
+            matchedSegment = best;
+            offRoutePositions = 0;
+            double along = distanceAlong[best] + GeoMath.distanceMeters(polyline.get(best), position);
+            remainingMeters = Math.max(0, distanceAlong[segments] - along);
+            return;
+        }
+        if (++offRoutePositions != OFF_ROUTE_POSITIONS) return;
+
+        Log.d(TAG, "Left the route by " + Math.round(distance) + "m, rerouting");
+        timer.execute(() -> {
+            try {
+                rerouter.reroute(new ArrayList<>());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Rerouting failed", e);
+            }
+        });
+    }
+
+    public synchronized double getRemainingMeters() {
+        return remainingMeters;
+    }
+
+    public void dispose() {
+        store.removeListener(this);
+        stop();
+        timer.shutdownNow();
+    }
+
+    @Override
+    public void onPoiAdded(PointOfInterest poi) {
+        check(null, poi);
+    }
+
+    @Override
+    public void onPoiRemoved(PointOfInterest poi) {
+    }
+
+    @Override
+    public void onPoiUpdated(PointOfInterest previous, PointOfInterest poi) {
+        check(previous, poi);
+    }
+
+    private synchronized void check(PointOfInterest previous, PointOfInterest poi) {
+        if (index == null || !poi.type.equals("hazard")) return;
+        if (destination != null && poi.id.equals(destination.id)) return;
+        if (!index.inCorridor(poi.coordinates)) return;
+        // A re-confirmed hazard that was already on the route changes nothing
+        if (previous != null && previous.type.equals("hazard") && index.inCorridor(previous.coordinates)) return;
+
+        long now = System.currentTimeMillis();
+        if (hits.isEmpty()) firstHitAt = now;
+        hits.add(poi);
+        if (pending != null) pending.cancel(false);
+        long due = Math.min(now + quietMillis, firstHitAt + maxDelayMillis);
+        pending = timer.schedule(this::fire, Math.max(0, due - now), TimeUnit.MILLISECONDS);
+    }
+
+    private void fire() {
+        List<PointOfInterest> fired;
+        synchronized (this) {
+            if (hits.isEmpty()) return;
+            fired = new ArrayList<>(hits);
+            hits.clear();
+            pending = null;
+        }
+        Log.d(TAG, fired.size() + " new hazards on the route, rerouting");
+        try {
+            rerouter.reroute(fired);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Rerouting failed", e);
+        }
+    }
+
+    private int nearestSegment(GeoCoordinates p, int from, int to) {
+        int best = from;
+        double closest = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double distance = distanceToSegment(p, i);
+            if (distance < closest) {
+                closest = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private double distanceToSegment(GeoCoordinates p, int segment) {
+        return GeoMath.distanceToSegmentMeters(p, polyline.get(segment), polyline.get(segment + 1));
+    }
+
+    private void cancelPending() {
+        if (pending != null) pending.cancel(false);
+        pending = null;
+        hits.clear();
+    }
+}
@@ -0,0 +1,151 @@
+package com.here.routing;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns the hazard set into a small list of avoidance areas for a routing request. Only
+ * hazards near the origin-destination corridor are considered, overlapping or adjacent
+ * boxes are merged where that does not block much road away from the hazards, and the result
+ * is capped with the hazards nearest the direct line kept first, so the request stays small
+ * however many hazards exist.
+ */
+public class AvoidancePlanner {
+    // Routes rarely stray further than this from the straight line on city trips
+    private static final double MIN_CORRIDOR_METERS = 1500;
+    private static final double CORRIDOR_FRACTION = 0.35;
+    // Boxes closer than this are merged into one
+    private static final double MERGE_GAP_METERS = 10;
+    // ...but only while the union covers little more than the two boxes, and stays this small,
+    // so a chain of hazards along a street does not grow into a box over whole blocks
+    private static final double MAX_MERGE_WASTE = 0.25;
+    private static final double MAX_MERGED_SIDE_METERS = 300;
+    public static final int DEFAULT_MAX_AREAS = 20;
+
+    private final PoiStore store;
+    private final double hazardRadiusMeters;
+    private final int maxAreas;
+
+    public AvoidancePlanner(PoiStore store, double hazardRadiusMeters, int maxAreas) {
+        this.store = store;
+        this.hazardRadiusMeters = hazardRadiusMeters;
+        this.maxAreas = maxAreas;
+    }
+
+    private static class Area {
+        double south, west, north, east;
+        // Distance of the closest hazard in the area from the direct line
+        double priority;
+        boolean merged;
+
+        Area(GeoBox box, double priority) {
+            south = box.southWestCorner.latitude;
+            west = box.southWestCorner.longitude;
+            north = box.northEastCorner.latitude;
+            east = box.northEastCorner.longitude;
+            this.priority = priority;
+        }
+
+        boolean nearlyOverlaps(Area other, double latGap, double lonGap) {
+            return south <= other.north + latGap && other.south <= north + latGap
+                    && west <= other.east + lonGap && other.west <= east + lonGap;
+        }
+
+        double area() {
+            return (north - south) * (east - west);
+        }
+
+        // Whether the union is small and mostly made of the two boxes themselves
+        boolean mergesTightly(Area other, double maxLatSide, double maxLonSide) {
+            double unionSouth = Math.min(south, other.south), unionNorth = Math.max(north, other.north);
+            double unionWest = Math.min(west, other.west), unionEast = Math.max(east, other.east);
+            if (unionNorth - unionSouth > maxLatSide || unionEast - unionWest > maxLonSide) return false;
+            double union = (unionNorth - unionSouth) * (unionEast - unionWest);
+            return union <= (area() + other.area()) * (1 + MAX_MERGE_WASTE);
+        }
+
+        void absorb(Area other) {
+            south = Math.min(south, other.south);
+            west = Math.min(west, other.west);
+            north = Math.max(north, other.north);
+            east = Math.max(east, other.east);
+            priority = Math.min(priority, other.priority);
+        }
+
+        GeoBox toGeoBox() {
+            return new GeoBox(new GeoCoordinates(south, west), new GeoCoordinates(north, east));
+        }
+    }
+
+    /**
+     * Avoidance areas for a trip from {@code origin} to {@code destination}. The hazard at the
+     * destination itself, if any, is left out so the route can still reach it.
+     */
+    public List<GeoBox> plan(GeoCoordinates origin, GeoCoordinates destination, PointOfInterest excluded) {
+        double tripMeters = GeoMath.distanceMeters(origin, destination);
+        double corridorMeters = Math.max(MIN_CORRIDOR_METERS, tripMeters * CORRIDOR_FRACTION);
+
+        // Box around both endpoints widened by the corridor, answered from the spatial index
+        double latPad = GeoMath.metersToLatDegrees(corridorMeters);
+        double lonPad = GeoMath.metersToLonDegrees(corridorMeters, (origin.latitude + destination.latitude) / 2);
+        GeoBox searchBox = new GeoBox(
+                new GeoCoordinates(Math.min(origin.latitude, destination.latitude) - latPad,
+                        Math.min(origin.longitude, destination.longitude) - lonPad),
+                new GeoCoordinates(Math.max(origin.latitude, destination.latitude) + latPad,
+                        Math.max(origin.longitude, destination.longitude) + lonPad));
+
+        List<Area> areas = new ArrayList<>();
+        for (PointOfInterest hazard : store.getInBox("hazard", searchBox)) {
+            if (excluded != null && hazard.id.equals(excluded.id)) continue;
+            double offset = GeoMath.distanceToSegmentMeters(hazard.coordinates, origin, destination);
+            if (offset > corridorMeters) continue;
+            areas.add(new Area(GeoMath.boxAround(hazard.coordinates, hazardRadiusMeters), offset));
+        }
+
+        List<Area> merged = merge(areas, origin.latitude);
+
+        // Hazards closest to the direct line are the likeliest to be on the route
+        Collections.sort(merged, (a, b) -> Double.compare(a.priority, b.priority));
+        List<GeoBox> result = new ArrayList<>(Math.min(merged.size(), maxAreas));
+        for (int i = 0; i < merged.size() && i < maxAreas; i++) result.add(merged.get(i).toGeoBox());
+        return result;
+    }
+
+    // Repeatedly unions boxes that overlap or nearly touch, where the union stays tight. Areas
+    // are sorted by their southern edge so each one is only compared with the few that can
+    // still reach it.
+    private static List<Area> merge(List<Area> areas, double latitude) {
+        double latGap = GeoMath.metersToLatDegrees(MERGE_GAP_METERS);
+        double lonGap = GeoMath.metersToLonDegrees(MERGE_GAP_METERS, latitude);
+        double maxLatSide = GeoMath.metersToLatDegrees(MAX_MERGED_SIDE_METERS);
+        double maxLonSide = GeoMath.metersToLonDegrees(MAX_MERGED_SIDE_METERS, latitude);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Collections.sort(areas, (a, b) -> Double.compare(a.south, b.south));
+            for (int i = 0; i < areas.size(); i++) {
+                Area area = areas.get(i);
+                if (area.merged) continue;
+                for (int j = i + 1; j < areas.size(); j++) {
+                    Area other = areas.get(j);
+                    if (other.south > area.north + latGap) break;
+                    if (other.merged || !area.nearlyOverlaps(other, latGap, lonGap)) continue;
+                    if (!area.mergesTightly(other, maxLatSide, maxLonSide)) continue;
+                    area.absorb(other);
+                    other.merged = true;
+                    changed = true;
+                }
+            }
+
+            List<Area> remaining = new ArrayList<>(areas.size());
+            for (Area area : areas) if (!area.merged) remaining.add(area);
+            areas = remaining;
+        }
+        return areas;
+    }
+}
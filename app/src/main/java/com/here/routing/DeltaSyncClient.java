@@ -0,0 +1,86 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Client half of the delta sync protocol. Local mutations are queued as operations, pushed
+ * against the last seen revision, and remote changes are pulled incrementally from there.
+ * Not thread-safe; JsonApi drives it from its single background executor.
+ */
+public class DeltaSyncClient {
+    private static final String TAG = DeltaSyncClient.class.getSimpleName();
+
+    public interface Listener {
+        // Called on the sync thread for operations made by other clients
+        void onRemoteOperation(SyncOperation op);
+        // Called on the sync thread for local operations the server rejected
+        void onConflict(SyncOperation op);
+    }
+
+    private final SyncTransport transport;
+    private final Listener listener;
+    private final String clientId;
+    private final List<SyncOperation> pending = new ArrayList<>();
+    private long lastRevision;
+    private boolean pulled;
+
+    /** {@code clientId} must be stable across restarts, see {@link JsonApi#getClientId()}. */
+    public DeltaSyncClient(String clientId, SyncTransport transport, Listener listener) {
+        this.clientId = clientId;
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    public String getClientId() { return clientId; }
+
+    public long getLastRevision() { return lastRevision; }
+
+    public void submit(SyncOperation op) {
+        // Operations replayed from the offline log keep the id they were created with
+        if (op.clientId == null) op.clientId = clientId;
+        op.baseRevision = lastRevision;
+        pending.add(op);
+    }
+
+    /** Pushes queued operations, then pulls everything newer than the last seen revision. */
+    public void sync() throws IOException {
+        if (!pulled) {
+            // Operations queued before the first pull were made against the fetched feed, not revision 0
+            pull();
+            for (SyncOperation op : pending) op.baseRevision = lastRevision;
+        }
+        if (!pending.isEmpty()) {
+            List<SyncOperation> batch = new ArrayList<>(pending);
+            SyncTransport.PushResult pushed = transport.push(clientId, lastRevision, batch);
+            // Only drop what the server answered for, by op id since the answer may be a decoded copy;
+            // anything else is retried next sync
+            Set<String> answered = new HashSet<>();
+            for (SyncOperation op : pushed.accepted) answered.add(op.opId);
+            for (SyncOperation op : pushed.conflicts) answered.add(op.opId);
+            Iterator<SyncOperation> it = pending.iterator();
+            while (it.hasNext()) if (answered.contains(it.next().opId)) it.remove();
+            for (SyncOperation conflict : pushed.conflicts) {
+                Log.w(TAG, "Sync conflict: " + conflict);
+                if (listener != null) listener.onConflict(conflict);
+            }
+        }
+        pull();
+    }
+
+    private void pull() throws IOException {
+        SyncTransport.PullResult pulled = transport.pull(lastRevision);
+        for (SyncOperation op : pulled.operations) {
+            if (clientId.equals(op.clientId)) continue; // Already applied locally
+            if (listener != null) listener.onRemoteOperation(op);
+        }
+        lastRevision = pulled.revision;
+        this.pulled = true;
+    }
+}
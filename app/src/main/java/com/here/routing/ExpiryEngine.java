@@ -0,0 +1,173 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expires shared points that were not re-confirmed within their time to live. Every point
+ * gets a deadline of its last sighting plus the TTL for its type and source; deadlines sit in
+ * a priority queue and a single timer is armed for the earliest one. A re-confirmation
+ * (a newer {@code lastSeen}) simply queues a later deadline, and the stale queue entry is
+ * skipped when it comes up. Points due within the same second are expired in one sweep and
+ * handed to the {@link Evictor} together, so remote removals go out as one batch.
+ *
+ * Only points with a {@code lastSeen} expire, and only detection ingestion stamps one: the
+ * bin server's ingestor, or {@link PoiRepository} merging its own drones' detections when the
+ * bin has none. Reports users submit and older bin entries have none; how long one device has
+ * known them says nothing about their age, so they are left alone rather than removed from
+ * the bin for every client. A user report a drone sighting was merged into is stamped, and
+ * then expires like one.
+ */
+public class ExpiryEngine implements PoiStore.ChangeListener {
+    private static final String TAG = ExpiryEngine.class.getSimpleName();
+    private static final long SWEEP_SLACK_MILLIS = 1000;
+
+    public interface TtlPolicy {
+        // Time to live in millis, or 0 if the point never expires
+        long ttlMillis(PointOfInterest poi);
+    }
+
+    public interface Evictor {
+        // Called on the engine thread with every point that expired in one sweep
+        void evict(List<PointOfInterest> expired);
+    }
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    /** Drone sightings go stale quickly unless drones keep reporting them, confirmed user reports last longer. */
+    public static final TtlPolicy DEFAULT_POLICY = poi -> {
+        if (!PointOfInterest.isShared(poi.type)) return 0;
+        if (poi.type.equals("people")) return HOUR;
+        return poi.userSubmitted ? 12 * HOUR : 2 * HOUR;
+    };
+
+    private static class Deadline implements Comparable<Deadline> {
+        final long at;
+        final String id;
+
+        Deadline(long at, String id) {
+            this.at = at;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            return Long.compare(at, other.at);
+        }
+    }
+
+    private final PoiStore store;
+    private final TtlPolicy policy;
+    private final Evictor evictor;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    // Guarded by this
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>();
+    private final Map<String, Long> deadlines = new HashMap<>();
+    private ScheduledFuture<?> armed;
+    private long armedAt = Long.MAX_VALUE;
+
+    public ExpiryEngine(PoiStore store, TtlPolicy policy, Evictor evictor) {
+        this.store = store;
+        this.policy = policy;
+        this.evictor = evictor;
+        for (PointOfInterest poi : store.getAll()) track(poi);
+        store.addListener(this);
+    }
+
+    @Override
+    public void onPoiAdded(PointOfInterest poi) {
+        track(poi);
+    }
+
+    @Override
+    public void onPoiRemoved(PointOfInterest poi) {
+        synchronized (this) {
+            // Queue entries of removed points are dropped lazily when they come up
+            deadlines.remove(poi.id);
+        }
+    }
+
+    @Override
+    public void onPoiUpdated(PointOfInterest previous, PointOfInterest poi) {
+        track(poi);
+    }
+
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    public void dispose() {
+        store.removeListener(this);
+        timer.shutdownNow();
+    }
+
+    private synchronized void track(PointOfInterest poi) {
+        long ttl = policy.ttlMillis(poi);
+        if (ttl <= 0 || poi.lastSeen == 0) {
+            // An update may have taken away what made the point expire
+            deadlines.remove(poi.id);
+            return;
+        }
+
+        long at = poi.lastSeen + ttl;
+        Long current = deadlines.get(poi.id);
+        if (current != null && current == at) return;
+
+        deadlines.put(poi.id, at);
+        queue.add(new Deadline(at, poi.id));
+        if (queue.size() > 2 * deadlines.size() + 64) {
+            // Frequently re-confirmed points leave many superseded entries behind
+            queue.clear();
+            for (Map.Entry<String, Long> entry : deadlines.entrySet()) queue.add(new Deadline(entry.getValue(), entry.getKey()));
+        }
+        arm();
+    }
+
+    // Keeps one timer, set for the earliest deadline
+    private void arm() {
+        Deadline head = queue.peek();
+        if (head == null || head.at >= armedAt) return;
+        if (armed != null) armed.cancel(false);
+        armedAt = head.at;
+        long delay = Math.max(0, head.at - System.currentTimeMillis());
+        armed = timer.schedule(this::sweep, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void sweep() {
+        List<PointOfInterest> expired = new ArrayList<>();
+        synchronized (this) {
+            armed = null;
+            armedAt = Long.MAX_VALUE;
+            long now = System.currentTimeMillis();
+            while (!queue.isEmpty() && queue.peek().at <= now + SWEEP_SLACK_MILLIS) {
+                Deadline deadline = queue.poll();
+                Long current = deadlines.get(deadline.id);
+                // Superseded by a re-confirmation, or the point is already gone
+                if (current == null || current != deadline.at) continue;
+
+                deadlines.remove(deadline.id);
+                PointOfInterest poi = store.get(deadline.id);
+                if (poi != null) expired.add(poi);
+            }
+            arm();
+        }
+        if (expired.isEmpty()) return;
+
+        Log.d(TAG, "Expired " + expired.size() + " points, " + size() + " still tracked");
+        try {
+            evictor.evict(expired);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Evicting expired points failed", e);
+        }
+    }
+}
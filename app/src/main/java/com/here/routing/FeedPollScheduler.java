@@ -0,0 +1,108 @@
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Drives periodic feed refreshes on the main thread. The delay before the next poll comes
+ * from an {@link IntervalPolicy}, so it can shorten while the user is navigating near hazards
+ * and stretch when idle. Failed polls back off exponentially with full jitter up to a cap,
+ * and nothing is polled while paused.
+ */
+public class FeedPollScheduler {
+    private static final String TAG = FeedPollScheduler.class.getSimpleName();
+    private static final long MIN_BACKOFF_MILLIS = 5000, MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+    private static final double INTERVAL_JITTER = 0.1;
+
+    public interface Task {
+        // Starts one poll; done must be called on the main thread once it finished
+        void poll(Callback done);
+    }
+
+    public interface Callback {
+        void onComplete(boolean success);
+    }
+
+    public interface IntervalPolicy {
+        long nextIntervalMillis();
+    }
+
+    private final Task task;
+    private final IntervalPolicy policy;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final Runnable pollRunnable = this::poll;
+    private boolean paused = true;
+    private boolean inFlight;
+    private int consecutiveErrors;
+    private long lastPollMillis;
+
+    public FeedPollScheduler(Task task, IntervalPolicy policy) {
+        this.task = task;
+        this.policy = policy;
+        // The caller fetches once on startup, so the first poll is a full interval away
+        this.lastPollMillis = SystemClock.elapsedRealtime();
+    }
+
+    /** Starts or restarts polling; polls right away if the last one is older than an interval. */
+    public void resume() {
+        if (!paused) return;
+        paused = false;
+        long sinceLast = SystemClock.elapsedRealtime() - lastPollMillis;
+        schedule(Math.max(0, policy.nextIntervalMillis() - sinceLast));
+    }
+
+    public void pause() {
+        paused = true;
+        handler.removeCallbacks(pollRunnable);
+    }
+
+    /** Re-evaluates the interval, e.g. after a route was started or cleared. */
+    public void reschedule() {
+        if (paused || inFlight || consecutiveErrors > 0) return;
+        long sinceLast = SystemClock.elapsedRealtime() - lastPollMillis;
+        schedule(Math.max(0, jittered(policy.nextIntervalMillis()) - sinceLast));
+    }
+
+    private void poll() {
+        if (paused || inFlight) return;
+        inFlight = true;
+        lastPollMillis = SystemClock.elapsedRealtime();
+        task.poll(this::onPollComplete);
+    }
+
+    private void onPollComplete(boolean success) {
+        inFlight = false;
+        if (success) {
+            consecutiveErrors = 0;
+        } else {
+            consecutiveErrors++;
+        }
+        if (paused) return;
+
+        long delay;
+        if (success) {
+            delay = jittered(policy.nextIntervalMillis());
+        } else {
+            // Full jitter: anywhere between zero and the exponential cap
+            long cap = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(consecutiveErrors - 1, 16));
+            delay = Math.max(MIN_BACKOFF_MILLIS / 2, (long) (random.nextDouble() * cap));
+            Log.d(TAG, "Poll failed " + consecutiveErrors + " times, retrying in " + delay + " ms");
+        }
+        schedule(delay);
+    }
+
+    // Spreads regular polls by a few percent so clients do not stay in step
+    private long jittered(long interval) {
+        return (long) (interval * (1 - INTERVAL_JITTER + random.nextDouble() * 2 * INTERVAL_JITTER));
+    }
+
+    private void schedule(long delayMillis) {
+        handler.removeCallbacks(pollRunnable);
+        handler.postDelayed(pollRunnable, delayMillis);
+    }
+}
@@ -0,0 +1,50 @@
+package com.here.routing;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+
+public final class GeoMath {
+    public static final double METERS_PER_DEGREE_LAT = 111320.0;
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    private GeoMath() {}
+
+    public static double metersToLatDegrees(double meters) {
+        return meters / METERS_PER_DEGREE_LAT;
+    }
+
+    public static double metersToLonDegrees(double meters, double latitude) {
+        return meters / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(latitude)));
+    }
+
+    // Equirectangular approximation, accurate enough for the city-scale distances used here
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    public static double distanceMeters(GeoCoordinates a, GeoCoordinates b) {
+        return distanceMeters(a.latitude, a.longitude, b.latitude, b.longitude);
+    }
+
+    /** Distance from {@code p} to the segment a-b, on a local flat projection around a. */
+    public static double distanceToSegmentMeters(GeoCoordinates p, GeoCoordinates a, GeoCoordinates b) {
+        double cosLat = Math.cos(Math.toRadians(a.latitude));
+        double bx = (b.longitude - a.longitude) * cosLat, by = b.latitude - a.latitude;
+        double px = (p.longitude - a.longitude) * cosLat, py = p.latitude - a.latitude;
+
+        double lengthSquared = bx * bx + by * by;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * bx + py * by) / lengthSquared));
+        double dx = px - t * bx, dy = py - t * by;
+        return Math.sqrt(dx * dx + dy * dy) * METERS_PER_DEGREE_LAT;
+    }
+
+    public static GeoBox boxAround(GeoCoordinates center, double radiusMeters) {
+        double deltaLat = metersToLatDegrees(radiusMeters);
+        double deltaLon = metersToLonDegrees(radiusMeters, center.latitude);
+        return new GeoBox(
+                new GeoCoordinates(center.latitude - deltaLat, center.longitude - deltaLon),
+                new GeoCoordinates(center.latitude + deltaLat, center.longitude + deltaLon));
+    }
+}
@@ -0,0 +1,78 @@
+package com.here.routing;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/** Standard base-32 geohash encoding, used to bucket reports by location. */
+public final class Geohash {
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {}
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0, ch = 0;
+        while (hash.length() < precision) {
+            // Bits alternate between longitude and latitude, starting with longitude
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /** Height of a cell in degrees. */
+    public static double cellHeight(int precision) {
+        int latBits = precision * 5 / 2;
+        return 180.0 / (1L << latBits);
+    }
+
+    /** Width of a cell in degrees. */
+    public static double cellWidth(int precision) {
+        int lonBits = (precision * 5 + 1) / 2;
+        return 360.0 / (1L << lonBits);
+    }
+
+    /**
+     * The cell containing the point plus its eight neighbours, so a search radius smaller
+     * than a cell never misses a point just across a cell border.
+     */
+    public static Set<String> cellsAround(double latitude, double longitude, int precision) {
+        double height = cellHeight(precision), width = cellWidth(precision);
+        Set<String> cells = new LinkedHashSet<>(9);
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            for (int dLon = -1; dLon <= 1; dLon++) {
+                double lat = Math.max(-90, Math.min(90, latitude + dLat * height));
+                double lon = longitude + dLon * width;
+                if (lon < -180) lon += 360;
+                else if (lon >= 180) lon -= 360;
+                cells.add(encode(lat, lon, precision));
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,60 @@
+package com.here.routing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * {@link SyncTransport} over the shared HTTP client, against the {@code /sync} endpoints of a
+ * self-hosted bin such as the server module's {@code LocalBinServer}: {@code POST <sync>/push} with a
+ * {@link PushRequest} and {@code GET <sync>/pull?since=<revision>}. Operations travel as JSON
+ * under their own field names.
+ */
+public class HttpSyncTransport implements SyncTransport {
+    private static final Gson gson = new Gson();
+
+    /** Body of a push. */
+    public static class PushRequest {
+        public String clientId;
+        public long baseRevision;
+        public List<SyncOperation> operations;
+    }
+
+    private final SharedHttpClient httpClient = SharedHttpClient.get();
+    private final String url;
+
+    public HttpSyncTransport(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public PushResult push(String clientId, long baseRevision, List<SyncOperation> operations) throws IOException {
+        PushRequest request = new PushRequest();
+        request.clientId = clientId;
+        request.baseRevision = baseRevision;
+        request.operations = operations;
+        byte[] body = gson.toJson(request).getBytes(StandardCharsets.UTF_8);
+        SharedHttpClient.Response response = httpClient.post(url + "/push", JsonApi.binHeaders(), body, "application/json");
+        return decode(response, PushResult.class);
+    }
+
+    @Override
+    public PullResult pull(long sinceRevision) throws IOException {
+        SharedHttpClient.Response response = httpClient.get(url + "/pull?since=" + sinceRevision, JsonApi.binHeaders());
+        return decode(response, PullResult.class);
+    }
+
+    private static <T> T decode(SharedHttpClient.Response response, Class<T> type) throws IOException {
+        if (!response.isSuccessful()) throw new IOException("Sync request failed with response code " + response.code);
+        try {
+            T result = gson.fromJson(new String(response.body, StandardCharsets.UTF_8), type);
+            if (result == null) throw new IOException("Empty sync response");
+            return result;
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed sync response", e);
+        }
+    }
+}
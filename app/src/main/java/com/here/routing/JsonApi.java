@@ -1,37 +1,27 @@
 package com.here.routing;
 
 import android.content.Context;
-import android.os.Debug;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.widget.Toast;
-
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.lang.reflect.Type;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.UUID;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class JsonApi {
     private static final String JSON_BIN_URL = "https://api.jsonbin.io/v3/b/67e592e08a456b79667de663";
@@ -39,199 +29,226 @@ public class JsonApi {
     public interface DataCallback {
         void onSuccess(List<PointOfInterest> points);
         void onError(String error);
+        // The feed has not changed since the last fetch, so there is nothing to merge
+        default void onNotModified() {}
     }
 
-    public static void fetchJsonData(Context context, DataCallback callback) {
-        RequestQueue queue = Volley.newRequestQueue(context);
-
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.GET, JSON_BIN_URL, null,
-                response -> {
-                    try {
-                        // Extract "points" array
-                        JSONObject record = response.getJSONObject("record");
-                        String jsonArray = record.getJSONArray("points").toString();
-
-                        // Parse JSON using Gson
-                        Gson gson = new GsonBuilder()
-                                .registerTypeAdapter(PointOfInterest.class, new PointOfInterestDeserializer())
-                                .create();
-                        Type listType = new TypeToken<ArrayList<PointOfInterest>>() {}.getType();
-                        List<PointOfInterest> points = gson.fromJson(jsonArray, listType);
-
-                        callback.onSuccess(points);
-                    } catch (Exception e) {
-                        callback.onError(e.getMessage());
-                    }
-                },
-                error -> callback.onError(error.toString())
-        ) {
-            @Override
-            public Map<String, String> getHeaders() {
-                Map<String, String> headers = new HashMap<>();
-                headers.put("X-Master-Key", Secrets.X_MASTER_KEY); // Needed if your bin is private
-                return headers;
-            }
-        };
+    public interface WriteCallback {
+        // Called on the main thread; error is null on success
+        void onComplete(String error);
+    }
+
+    private static final SharedHttpClient httpClient = SharedHttpClient.get();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // A self-hosted bin can be set at build time with -PbinUrl=...
+    private static final String DEFAULT_BIN_URL = BuildConfig.BIN_URL.isEmpty() ? JSON_BIN_URL : BuildConfig.BIN_URL;
+    private static volatile String binUrl = DEFAULT_BIN_URL;
+
+    /** Points all bin traffic somewhere else, e.g. at the self-hosted bin of the server module; null restores the default. */
+    public static void setBinUrl(String url) {
+        binUrl = url != null ? url : DEFAULT_BIN_URL;
+    }
 
-        queue.add(request);
+    /** Delta sync endpoint of the current bin, or null for JsonBin, which has none. */
+    public static String getSyncUrl() {
+        String url = binUrl;
+        return url.equals(JSON_BIN_URL) ? null : url + "/sync";
     }
 
-    private static final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    /** Push channel of the current bin, or null for JsonBin, which has none. */
+    public static String getEventsUrl() {
+        String url = binUrl;
+        return url.equals(JSON_BIN_URL) ? null : url + "/events";
+    }
+
+    /** Detection ingestion endpoint of the current bin, or null for JsonBin, which has none. */
+    public static String getDetectionsUrl() {
+        String url = binUrl;
+        return url.equals(JSON_BIN_URL) ? null : url + "/detections";
+    }
 
-    public static void removePOIInBackground(String titleToRemove) {
+    // Fetches on the shared client and delivers the result on the main thread
+    public static void fetchJsonData(Context context, DataCallback callback) {
         executorService.execute(() -> {
             try {
-                removePOI(titleToRemove);
+                SharedHttpClient.Response response = httpClient.get(binUrl, binHeaders());
+                if (response.notModified) {
+                    mainHandler.post(callback::onNotModified);
+                    return;
+                }
+                if (!response.isSuccessful()) {
+                    mainHandler.post(() -> callback.onError("Fetch failed with response code " + response.code));
+                    return;
+                }
+                List<PointOfInterest> points = PoiFeedParser.parseFeed(new ByteArrayInputStream(response.body));
+                mainHandler.post(() -> callback.onSuccess(points));
             } catch (Exception e) {
-                e.printStackTrace();
+                mainHandler.post(() -> callback.onError(e.toString()));
             }
         });
     }
 
-    public static void removePOI(String titleToRemove) {
-        try {
-            // 1. Fetch current POI data from the JSON bin
-            URL url = new URL(JSON_BIN_URL);  // Replace with your JSON Bin URL
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("X-Master-Key", Secrets.X_MASTER_KEY);  // Replace with your API key
-
-            connection.connect();
-
-            // Read the response
-            InputStream inStream = connection.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inStream, StandardCharsets.UTF_8));
-            StringBuilder responseBuilder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                responseBuilder.append(line);
-            }
-            connection.disconnect();
+    static Map<String, String> binHeaders() {
+        return Collections.singletonMap("X-Master-Key", Secrets.X_MASTER_KEY); // Needed if your bin is private
+    }
 
-            // Parse the fetched JSON
-            JSONObject jsonResponse = new JSONObject(responseBuilder.toString());
-            JSONArray pointsArray = jsonResponse.getJSONObject("record").getJSONArray("points");
+    private static final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private static final PoiWriteBatcher writeBatcher =
+            new PoiWriteBatcher(JsonApi::writeOperations, executorService, PoiWriteBatcher.DEFAULT_POLICY);
+    private static final String PREFS_NAME = "sync", PREF_CLIENT_ID = "clientId";
+    private static String localClientId;
+    private static DeltaSyncClient syncClient;
+
+    /**
+     * Loads the id this install writes under, creating it on the first start. It has to stay
+     * the same across restarts: delta sync tells its own operations from other clients' by
+     * it, also for operations resent from the offline log. Call before any write.
+     */
+    public static synchronized void loadClientId(Context context) {
+        if (localClientId != null) return;
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String id = prefs.getString(PREF_CLIENT_ID, null);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            prefs.edit().putString(PREF_CLIENT_ID, id).apply();
+        }
+        localClientId = id;
+    }
 
-            // 2. Remove POI from the array based on the passed title
-            for (int i = 0; i < pointsArray.length(); i++) {
-                JSONObject poi = pointsArray.getJSONObject(i);
-                String title = poi.getString("title");
+    public static synchronized String getClientId() {
+        if (localClientId == null) throw new IllegalStateException("loadClientId() was not called");
+        return localClientId;
+    }
 
-                if (title.equals(titleToRemove)) {
-                    pointsArray.remove(i);
-                    break;
-                }
-            }
+    /**
+     * Routes adds and removes through the delta sync protocol instead of full-document
+     * GET/PUT cycles. JsonBin cannot apply operations server-side, so this needs a
+     * {@link SyncTransport} such as an {@link HttpSyncTransport} on {@link #getSyncUrl()}.
+     */
+    public static void enableDeltaSync(SyncTransport transport, DeltaSyncClient.Listener listener) {
+        String clientId = getClientId();
+        executorService.execute(() -> syncClient = new DeltaSyncClient(clientId, transport, listener));
+    }
 
-            // 3. Prepare the updated JSON to send back to the JSON bin, without the "record" wrapper
-            JSONObject updatedJson = new JSONObject();
-            updatedJson.put("points", pointsArray); // Only include the "points" array
-
-            // 4. Send the updated data back with a PUT request
-            URL putUrl = new URL(JSON_BIN_URL);  // Replace with your JSON Bin URL
-            HttpURLConnection putConnection = (HttpURLConnection) putUrl.openConnection();
-            putConnection.setRequestMethod("PUT");
-            putConnection.setRequestProperty("X-Master-Key", Secrets.X_MASTER_KEY);
-            putConnection.setRequestProperty("Content-Type", "application/json");
-
-            putConnection.setDoOutput(true);
-            try (OutputStream os = putConnection.getOutputStream()) {
-                byte[] input = updatedJson.toString().getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
+    public static void syncInBackground() {
+        executorService.execute(() -> {
+            if (syncClient == null) return;
+            try {
+                syncClient.sync();
+            } catch (Exception e) {
+                // Operations stay queued and go out with the next sync
+                Log.e("ERROR", "Delta sync failed: " + e.getMessage());
             }
+        });
+    }
 
-            // Get the response from the PUT request
-            int responseCode = putConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                System.out.println("POI removed and updated successfully.");
-            } else {
-                System.out.println("Failed to update POIs. Response Code: " + responseCode);
+    /** Queues an already built operation, e.g. one replayed from the offline log. */
+    public static boolean submitInBackground(SyncOperation op, PoiWriteBatcher.Callback callback) {
+        return writeBatcher.submit(op, callback);
+    }
+
+    /**
+     * Posts a drone detection to the bin's ingestion endpoint, which merges repeat sightings
+     * into one point and stamps it; the result comes back with the next push or poll.
+     */
+    public static void ingestDetectionInBackground(JsonObject detection, WriteCallback callback) {
+        String url = getDetectionsUrl();
+        executorService.execute(() -> {
+            try {
+                SharedHttpClient.Response response = httpClient.post(url, binHeaders(),
+                        detection.toString().getBytes(StandardCharsets.UTF_8), "application/json");
+                String error = response.isSuccessful() ? null : "Ingest failed with response code " + response.code;
+                mainHandler.post(() -> callback.onComplete(error));
+            } catch (Exception e) {
+                mainHandler.post(() -> callback.onComplete(e.toString()));
             }
+        });
+    }
 
-            putConnection.disconnect();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("Error occurred while removing POI: " + e.getMessage());
+    public static boolean removePOIInBackground(PointOfInterest poi) {
+        return removePOIInBackground(poi, null);
+    }
+
+    public static boolean removePOIInBackground(PointOfInterest poi, PoiWriteBatcher.Callback callback) {
+        return writeBatcher.submit(SyncOperation.remove(getClientId(), poi), callback);
+    }
+
+    public static boolean addPOIInBackground(PointOfInterest newPoi) {
+        return addPOIInBackground(newPoi, null);
+    }
+
+    public static boolean addPOIInBackground(PointOfInterest newPoi, PoiWriteBatcher.Callback callback) {
+        return writeBatcher.submit(SyncOperation.add(getClientId(), newPoi), callback);
+    }
+
+    // Sink for the write batcher, runs on executorService
+    private static void writeOperations(List<SyncOperation> operations) throws Exception {
+        if (syncClient == null) {
+            applyOperations(operations);
+            return;
         }
+        for (SyncOperation op : operations) syncClient.submit(op);
+        syncClient.sync();
     }
 
-    public static void addPOIInBackground(PointOfInterest newPoi) {
-        executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                addPOI(newPoi); // Calls the existing addPOI function
-            }
-        });
+    public static void removePOI(PointOfInterest poi) {
+        try {
+            applyOperations(Collections.singletonList(SyncOperation.remove(getClientId(), poi)));
+            Log.d("POI", "POI removed and updated successfully.");
+        } catch (Exception e) {
+            Log.e("ERROR", "Error occurred while removing POI: " + e.getMessage(), e);
+        }
     }
 
     public static void addPOI(PointOfInterest newPoi) {
         try {
-            // 1. Fetch current POI data from the JSON bin
-            URL url = new URL(JSON_BIN_URL);  // Replace with your JSON Bin URL
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("X-Master-Key", Secrets.X_MASTER_KEY);  // Replace with your API key
-
-            connection.connect();
-
-            // Read the response
-            InputStream inStream = connection.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inStream, StandardCharsets.UTF_8));
-            StringBuilder responseBuilder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                responseBuilder.append(line);
-            }
-            connection.disconnect();
-
-            // Parse the fetched JSON
-            JSONObject jsonResponse = new JSONObject(responseBuilder.toString());
-
-            // 2. Retrieve the "points" array from the response
-            JSONArray pointsArray = jsonResponse.getJSONObject("record").getJSONArray("points");
-
-            // 3. Create a new POI JSONObject
-            JSONObject newPoiJson = new JSONObject();
-            newPoiJson.put("type", newPoi.type);
-            newPoiJson.put("title", newPoi.title);
-            newPoiJson.put("description", newPoi.description);
-            newPoiJson.put("coordinates", new JSONObject()
-                    .put("latitude", newPoi.coordinates.latitude)
-                    .put("longitude", newPoi.coordinates.longitude));
-            newPoiJson.put("userSubmitted", true);
-
-            // 4. Add the new POI to the points array
-            pointsArray.put(newPoiJson);
-
-            // 5. Prepare the updated JSON to send back to the JSON bin, only the "points" array
-            JSONObject updatedJson = new JSONObject();
-            updatedJson.put("points", pointsArray);  // Only include the "points" array, no "record" wrapper
-
-            // 6. Send the updated data back with a PUT request
-            URL putUrl = new URL(JSON_BIN_URL);  // Replace with your JSON Bin URL
-            HttpURLConnection putConnection = (HttpURLConnection) putUrl.openConnection();
-            putConnection.setRequestMethod("PUT");
-            putConnection.setRequestProperty("X-Master-Key", Secrets.X_MASTER_KEY);
-            putConnection.setRequestProperty("Content-Type", "application/json");
-
-            putConnection.setDoOutput(true);
-            try (OutputStream os = putConnection.getOutputStream()) {
-                byte[] input = updatedJson.toString().getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
+            applyOperations(Collections.singletonList(SyncOperation.add(getClientId(), newPoi)));
+            Log.d("POI", "POI added and updated successfully.");
+        } catch (Exception e) {
+            Log.e("ERROR", "Error occurred while adding POI: " + e.getMessage(), e);
+        }
+    }
 
-            // Get the response from the PUT request
-            int responseCode = putConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                System.out.println("POI added and updated successfully.");
-            } else {
-                System.out.println("Failed to update POIs. Response Code: " + responseCode);
-            }
+    /** Applies a batch of operations to the bin with a single GET and a single PUT. */
+    public static void applyOperations(List<SyncOperation> operations) throws Exception {
+        applyOperations(binUrl, operations);
+    }
 
-            putConnection.disconnect();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("Error occurred while adding POI: " + e.getMessage());
+    // Same against the bin at url, so tests can use their own without repointing the app
+    static void applyOperations(String url, List<SyncOperation> operations) throws Exception {
+        // 1. Fetch current POI data from the JSON bin, reusing the cached copy if it is unchanged
+        SharedHttpClient.Response response = httpClient.get(url, binHeaders());
+        if (!response.isSuccessful()) {
+            throw new IOException("Failed to fetch POIs. Response Code: " + response.code);
+        }
+        JsonArray pointsArray = PoiFeedParser.readPointsTree(new ByteArrayInputStream(response.body));
+
+        // 2. Index the points by id, giving old entries their derived id so it is stored from now on
+        Map<String, JsonObject> pointsById = new LinkedHashMap<>();
+        for (JsonElement element : pointsArray) {
+            JsonObject poi = element.getAsJsonObject();
+            String id = PointOfInterestDeserializer.idOf(poi);
+            poi.addProperty("id", id);
+            pointsById.put(id, poi);
+        }
+
+        // 3. Apply every operation; an add with a known id replaces the entry instead of duplicating it
+        for (SyncOperation op : operations) {
+            if (op.kind == SyncOperation.Kind.REMOVE) {
+                pointsById.remove(op.poiId);
+                continue;
+            }
+            pointsById.put(op.poiId, op.toPoiJson());
+        }
+        JsonArray updatedPoints = new JsonArray(pointsById.size());
+        for (JsonObject poi : pointsById.values()) updatedPoints.add(poi);
+
+        // 4. Send the updated points back with a PUT request, without the "record" wrapper
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        PoiFeedParser.writePoints(updatedPoints, body);
+        SharedHttpClient.Response putResponse = httpClient.put(url, binHeaders(), body.toByteArray(), "application/json");
+        if (putResponse.code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Failed to update POIs. Response Code: " + putResponse.code);
         }
     }
 }
@@ -0,0 +1,71 @@
+package com.here.routing;
+
+import com.here.sdk.core.GeoCoordinates;
+
+/**
+ * Smooths raw position fixes with a constant-position Kalman filter: each fix is weighted by
+ * its reported accuracy against how far the user could have moved since the last one, so a
+ * single jumpy fix barely moves the estimate while a steady stream of good ones is followed
+ * closely. Fixes that are too inaccurate, or physically impossible jumps, are dropped. Not
+ * thread-safe; feed it from one thread.
+ */
+public class LocationFilter {
+    // Fixes worse than this say little about which street the user is on
+    private static final float MAX_ACCURACY_METERS = 60;
+    // Faster than any responder vehicle; larger jumps are glitches
+    private static final double MAX_SPEED_METERS_PER_SECOND = 70;
+
+    private final double processNoiseMetersPerSecond;
+    private double latitude, longitude;
+    // Estimate variance in square meters, negative until the first fix
+    private double variance = -1;
+    private long timeMillis;
+
+    public LocationFilter(double processNoiseMetersPerSecond) {
+        this.processNoiseMetersPerSecond = processNoiseMetersPerSecond;
+    }
+
+    /** Feeds one fix; returns false if it was rejected and the estimate is unchanged. */
+    public boolean update(double fixLatitude, double fixLongitude, float accuracyMeters, long fixTimeMillis) {
+        if (accuracyMeters <= 0 || accuracyMeters > MAX_ACCURACY_METERS) return false;
+        double measurementVariance = (double) accuracyMeters * accuracyMeters;
+        if (variance < 0) {
+            latitude = fixLatitude;
+            longitude = fixLongitude;
+            variance = measurementVariance;
+            timeMillis = fixTimeMillis;
+            return true;
+        }
+
+        long elapsed = fixTimeMillis - timeMillis;
+        if (elapsed < 0) return false; // Out of order
+        double seconds = elapsed / 1000.0;
+        double jump = GeoMath.distanceMeters(latitude, longitude, fixLatitude, fixLongitude);
+        if (jump > MAX_SPEED_METERS_PER_SECOND * seconds + accuracyMeters + Math.sqrt(variance)) return false;
+
+        // Uncertainty grows with the time the user had to move
+        variance += seconds * processNoiseMetersPerSecond * processNoiseMetersPerSecond;
+        double gain = variance / (variance + measurementVariance);
+        latitude += gain * (fixLatitude - latitude);
+        longitude += gain * (fixLongitude - longitude);
+        variance *= 1 - gain;
+        timeMillis = fixTimeMillis;
+        return true;
+    }
+
+    public boolean hasEstimate() {
+        return variance >= 0;
+    }
+
+    public GeoCoordinates getEstimate() {
+        return new GeoCoordinates(latitude, longitude);
+    }
+
+    public float getAccuracyMeters() {
+        return (float) Math.sqrt(Math.max(0, variance));
+    }
+
+    public void reset() {
+        variance = -1;
+    }
+}
@@ -0,0 +1,110 @@
+package com.here.routing;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.here.sdk.core.GeoCoordinates;
+
+/**
+ * The user's position, from GPS with the network provider as a coarse fallback. Raw fixes
+ * arrive on a background thread and go through a {@link LocationFilter}; the {@link Listener}
+ * only hears about the smoothed position once it moved a meaningful distance, or after a
+ * while without movement, so consumers never do work per raw fix. Needs the location
+ * permission, which {@link PermissionsRequestor} asks for along with the others.
+ */
+public class LocationTracker implements LocationListener {
+    private static final String TAG = LocationTracker.class.getSimpleName();
+    private static final long FIX_INTERVAL_MILLIS = 1000;
+    // Smoothed moves shorter than this, or than twice the estimate's uncertainty, are not reported
+    private static final double MIN_MOVE_METERS = 10;
+    // Reported anyway after this long so consumers see the position is still current
+    private static final long MAX_SILENCE_MILLIS = 30 * 1000;
+    // How quickly the estimate is allowed to drift from the last fix; higher follows faster
+    // movement with less lag, lower holds still better while parked
+    private static final double PROCESS_NOISE_METERS_PER_SECOND = 8;
+
+    public interface Listener {
+        // Called on the tracker thread
+        void onLocation(GeoCoordinates position, float accuracyMeters);
+    }
+
+    private final LocationManager locationManager;
+    private final Listener listener;
+    private final HandlerThread thread = new HandlerThread(TAG);
+    private final Handler handler;
+    // Tracker thread only
+    private final LocationFilter filter = new LocationFilter(PROCESS_NOISE_METERS_PER_SECOND);
+    private GeoCoordinates lastReported;
+    private long lastReportedAt;
+    private long rawFixes, reports;
+    private boolean started;
+
+    public LocationTracker(Context context, Listener listener) {
+        this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.listener = listener;
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    @SuppressLint("MissingPermission")
+    public synchronized void start() {
+        if (started || locationManager == null) return;
+        try {
+            for (String provider : new String[]{LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER}) {
+                if (!locationManager.isProviderEnabled(provider)) continue;
+                // Distance filtering is done on the smoothed position, not the raw fixes
+                locationManager.requestLocationUpdates(provider, FIX_INTERVAL_MILLIS, 0, this, thread.getLooper());
+                started = true;
+                Location last = locationManager.getLastKnownLocation(provider);
+                if (last != null) handler.post(() -> onLocationChanged(last));
+            }
+            // With every provider off there is nothing to stop, and the next start tries again
+            if (!started) Log.w(TAG, "No location provider enabled");
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission not granted", e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (!started) return;
+        locationManager.removeUpdates(this);
+        started = false;
+    }
+
+    public void dispose() {
+        stop();
+        thread.quitSafely();
+    }
+
+    public String getStats() {
+        return "rawFixes=" + rawFixes + " reports=" + reports;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        rawFixes++;
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : 0;
+        if (!filter.update(location.getLatitude(), location.getLongitude(), accuracy, location.getTime())) return;
+
+        GeoCoordinates estimate = filter.getEstimate();
+        long now = location.getTime();
+        double minMove = Math.max(MIN_MOVE_METERS, 2 * filter.getAccuracyMeters());
+        boolean moved = lastReported == null || GeoMath.distanceMeters(lastReported, estimate) >= minMove;
+        if (!moved && now - lastReportedAt < MAX_SILENCE_MILLIS) return;
+
+        lastReported = estimate;
+        lastReportedAt = now;
+        reports++;
+        try {
+            listener.onLocation(estimate, filter.getAccuracyMeters());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Location listener failed", e);
+        }
+    }
+}
@@ -23,6 +23,9 @@ public class MainActivity extends AppCompatActivity {
     private PermissionsRequestor permissionsRequestor;
     private MapViewLite mapView;
     private RoutingExample routingExample;
+    // A submit result that arrived before the map scene of a recreated activity was loaded
+    private Intent pendingSubmit;
+    private boolean resumed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,6 +44,9 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void initializeHERESDK() {
+        // Still alive if this activity was recreated; the repository's routing engine depends on it.
+        if (SDKNativeEngine.getSharedInstance() != null) return;
+
         // Set your credentials for the HERE SDK.
         String accessKeyID = Secrets.ACCESS_KEY_ID;
         String accessKeySecret = Secrets.ACCESS_KEY_SECRETS;
@@ -85,6 +91,12 @@ public class MainActivity extends AppCompatActivity {
             public void onLoadScene(@Nullable MapScene.ErrorCode errorCode) {
                 if (errorCode == null) {
                     routingExample = new RoutingExample(MainActivity.this, mapView);
+                    // After a rotation onResume ran before the view existed, and the old activity paused the repository
+                    if (resumed) routingExample.resumeUpdates();
+                    if (pendingSubmit != null) {
+                        routingExample.onSubmitResult(pendingSubmit);
+                        pendingSubmit = null;
+                    }
                 } else {
                     Log.d(TAG, "onLoadScene failed: " + errorCode.toString());
                 }
@@ -97,12 +109,15 @@ public class MainActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
 
         if (requestCode == 1 && resultCode == RESULT_OK) {
-            routingExample.onSubmitResult(data);
+            if (routingExample != null) routingExample.onSubmitResult(data);
+            else pendingSubmit = data;
         }
     }
 
     @Override
     protected void onPause() {
+        resumed = false;
+        if (routingExample != null) routingExample.pauseUpdates();
         mapView.onPause();
         super.onPause();
     }
@@ -110,13 +125,21 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         mapView.onResume();
+        resumed = true;
+        if (routingExample != null) routingExample.resumeUpdates();
         super.onResume();
     }
 
     @Override
     protected void onDestroy() {
+        if (routingExample != null) routingExample.dispose();
         mapView.onDestroy();
-        disposeHERESDK();
+        // A configuration change keeps the data, caches and SDK warm for the next activity
+        if (isFinishing()) {
+            PoiRepository.release();
+            PoiIconCache.release();
+            disposeHERESDK();
+        }
         super.onDestroy();
     }
 
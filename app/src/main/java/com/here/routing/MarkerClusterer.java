@@ -0,0 +1,218 @@
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Groups POIs of the same type into screen-sized grid cells for low zoom levels. Only shared
+ * report types are grouped; local markers such as the origin and a touched destination are
+ * always passed through on their own so they never disappear into a badge. Cell counts
+ * are kept up to date from store changes and only rebuilt when the zoom level changes, all on
+ * a background thread; the clusters in view are posted back to the main thread.
+ */
+public class MarkerClusterer implements PoiStore.ChangeListener {
+    // From this zoom level on every point gets its own marker
+    public static final int MAX_CLUSTER_ZOOM = 14;
+    // Roughly how wide a cluster cell is on screen
+    private static final double CELL_PIXELS = 96;
+
+    public interface Callback {
+        // Called on the main thread with the clusters inside the requested area
+        void onClusters(List<Cluster> visible);
+    }
+
+    /** Snapshot of one grid cell. {@code single} is set when the cell holds exactly one point. */
+    public static class Cluster {
+        public final String key, type;
+        public final int count;
+        public final GeoCoordinates center;
+        public final PointOfInterest single;
+
+        Cluster(String key, String type, int count, GeoCoordinates center, PointOfInterest single) {
+            this.key = key;
+            this.type = type;
+            this.count = count;
+            this.center = center;
+            this.single = single;
+        }
+    }
+
+    private static class Bucket {
+        final Map<String, PointOfInterest> members = new LinkedHashMap<>();
+        double sumLat, sumLon;
+    }
+
+    private final PoiStore store;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Latest request from the main thread; guarded by this
+    private int requestedZoom = -1;
+    private GeoBox requestedArea;
+    private Callback callback;
+    private boolean refreshQueued;
+
+    // Only touched on the executor
+    private int zoom = -1;
+    private double cellSize;
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    private final Map<String, PointOfInterest> unclustered = new HashMap<>();
+
+    public MarkerClusterer(PoiStore store) {
+        this.store = store;
+        store.addListener(this);
+    }
+
+    /** Asks for the clusters in {@code area} at {@code zoomLevel}; bursts of requests are coalesced. */
+    public synchronized void request(int zoomLevel, GeoBox area, Callback callback) {
+        requestedZoom = zoomLevel;
+        requestedArea = area;
+        this.callback = callback;
+        scheduleRefresh();
+    }
+
+    /** Stops delivering clusters until the next {@link #request}. */
+    public synchronized void stop() {
+        callback = null;
+    }
+
+    public void dispose() {
+        store.removeListener(this);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void onPoiAdded(PointOfInterest poi) {
+        executor.execute(() -> {
+            if (zoom < 0) return;
+            add(poi);
+            onDataChanged();
+        });
+    }
+
+    @Override
+    public void onPoiRemoved(PointOfInterest poi) {
+        executor.execute(() -> {
+            if (zoom < 0) return;
+            remove(poi);
+            onDataChanged();
+        });
+    }
+
+    @Override
+    public void onPoiUpdated(PointOfInterest previous, PointOfInterest poi) {
+        executor.execute(() -> {
+            if (zoom < 0) return;
+            remove(previous);
+            add(poi);
+            onDataChanged();
+        });
+    }
+
+    private synchronized void onDataChanged() {
+        if (callback != null) scheduleRefresh();
+    }
+
+    private synchronized void scheduleRefresh() {
+        if (refreshQueued) return;
+        refreshQueued = true;
+        executor.execute(this::refresh);
+    }
+
+    private void refresh() {
+        int targetZoom;
+        GeoBox area;
+        Callback target;
+        synchronized (this) {
+            refreshQueued = false;
+            targetZoom = requestedZoom;
+            area = requestedArea;
+            target = callback;
+        }
+        if (target == null || area == null) return;
+
+        if (targetZoom != zoom) rebuild(targetZoom);
+
+        List<Cluster> visible = new ArrayList<>();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            int count = bucket.members.size();
+            GeoCoordinates center = new GeoCoordinates(bucket.sumLat / count, bucket.sumLon / count);
+            if (!PoiStore.contains(area, center)) continue;
+
+            PointOfInterest first = bucket.members.values().iterator().next();
+            visible.add(new Cluster(entry.getKey(), first.type, count, center, count == 1 ? first : null));
+        }
+        for (PointOfInterest poi : unclustered.values()) {
+            if (PoiStore.contains(area, poi.coordinates)) visible.add(new Cluster(poi.id, poi.type, 1, poi.coordinates, poi));
+        }
+
+        mainHandler.post(() -> {
+            synchronized (MarkerClusterer.this) {
+                // Dropped if clustering was stopped or re-targeted in the meantime
+                if (callback != target) return;
+            }
+            target.onClusters(visible);
+        });
+    }
+
+    private void rebuild(int newZoom) {
+        zoom = newZoom;
+        // 256 px tiles: one pixel spans 360 / (256 * 2^zoom) degrees of longitude
+        cellSize = CELL_PIXELS * 360.0 / (256 * Math.pow(2, newZoom));
+        buckets.clear();
+        unclustered.clear();
+        for (PointOfInterest poi : store.getAll()) add(poi);
+    }
+
+    private void add(PointOfInterest poi) {
+        if (!PointOfInterest.isShared(poi.type)) {
+            unclustered.put(poi.id, poi);
+            return;
+        }
+        String key = keyFor(poi);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(key, bucket);
+        }
+        // A rebuild may already include a point whose change event is still queued
+        PointOfInterest replaced = bucket.members.put(poi.id, poi);
+        if (replaced != null) {
+            bucket.sumLat -= replaced.coordinates.latitude;
+            bucket.sumLon -= replaced.coordinates.longitude;
+        }
+        bucket.sumLat += poi.coordinates.latitude;
+        bucket.sumLon += poi.coordinates.longitude;
+    }
+
+    private void remove(PointOfInterest poi) {
+        if (!PointOfInterest.isShared(poi.type)) {
+            unclustered.remove(poi.id);
+            return;
+        }
+        String key = keyFor(poi);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null || bucket.members.remove(poi.id) == null) return;
+        bucket.sumLat -= poi.coordinates.latitude;
+        bucket.sumLon -= poi.coordinates.longitude;
+        if (bucket.members.isEmpty()) buckets.remove(key);
+    }
+
+    private String keyFor(PointOfInterest poi) {
+        long row = (long) Math.floor(poi.coordinates.latitude / cellSize);
+        long col = (long) Math.floor(poi.coordinates.longitude / cellSize);
+        return poi.type + ":" + row + ":" + col;
+    }
+}
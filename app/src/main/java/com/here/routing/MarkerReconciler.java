@@ -0,0 +1,287 @@
+package com.here.routing;
+
+import android.content.res.Resources;
+import android.text.format.DateUtils;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.core.Metadata;
+import com.here.sdk.mapviewlite.MapMarker;
+import com.here.sdk.mapviewlite.MapScene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the markers on the {@link MapScene} in step with the {@link PoiStore}. Markers are
+ * only created for points inside the current viewport, and store changes are recorded as
+ * they happen so {@link #apply()} only touches the markers that changed; UI thread work
+ * scales with the number of changes rather than the number of POIs.
+ *
+ * Below {@link MarkerClusterer#MAX_CLUSTER_ZOOM} nearby points of a type are shown as one
+ * count-badged marker instead, computed by the clusterer off the UI thread.
+ */
+public class MarkerReconciler implements PoiStore.ChangeListener {
+    // Markers are kept a little beyond the visible area so small pans do not churn them
+    private static final double VIEWPORT_PADDING = 0.25;
+
+    private final MapScene mapScene;
+    private final PoiStore store;
+    private final Resources resources;
+    private final MarkerClusterer clusterer;
+    // Keyed by POI id, or by cluster key for cluster markers
+    private final Map<String, Shown> shownByKey = new HashMap<>();
+    private final Map<MapMarker, Shown> shownByMarker = new IdentityHashMap<>();
+    // Latest pending value per POI id, in arrival order; null means removed. Guarded by itself
+    private final Map<String, PointOfInterest> pending = new LinkedHashMap<>();
+    private boolean fullSync = true;
+    private GeoBox requestedViewport, viewport;
+    private boolean clustering;
+
+    private static class Shown {
+        final PointOfInterest poi;
+        final MarkerClusterer.Cluster cluster;
+        final MapMarker marker;
+
+        Shown(PointOfInterest poi, MarkerClusterer.Cluster cluster, MapMarker marker) {
+            this.poi = poi;
+            this.cluster = cluster;
+            this.marker = marker;
+        }
+    }
+
+    public MarkerReconciler(MapScene mapScene, PoiStore store, Resources resources) {
+        this.mapScene = mapScene;
+        this.store = store;
+        this.resources = resources;
+        this.clusterer = new MarkerClusterer(store);
+        store.addListener(this);
+    }
+
+    @Override
+    public void onPoiAdded(PointOfInterest poi) {
+        record(poi.id, poi);
+    }
+
+    @Override
+    public void onPoiRemoved(PointOfInterest poi) {
+        record(poi.id, null);
+    }
+
+    @Override
+    public void onPoiUpdated(PointOfInterest previous, PointOfInterest poi) {
+        record(poi.id, poi);
+    }
+
+    private void record(String id, PointOfInterest poi) {
+        synchronized (pending) {
+            pending.put(id, poi);
+        }
+    }
+
+    /**
+     * Follows the camera: restricts markers to the visible area (every point when null) and
+     * switches between individual and clustered markers by zoom level. Call on the UI thread.
+     */
+    public void updateCamera(GeoBox visibleArea, double zoomLevel) {
+        setViewport(visibleArea);
+
+        boolean cluster = visibleArea != null && zoomLevel < MarkerClusterer.MAX_CLUSTER_ZOOM;
+        if (cluster) {
+            clustering = true;
+            clusterer.request((int) zoomLevel, viewport, this::applyClusters);
+            return;
+        }
+        if (clustering) {
+            clustering = false;
+            clusterer.stop();
+            synchronized (pending) {
+                fullSync = true;
+            }
+        }
+        apply();
+    }
+
+    private void setViewport(GeoBox visibleArea) {
+        synchronized (pending) {
+            if (sameArea(visibleArea, requestedViewport)) return;
+            requestedViewport = visibleArea;
+            viewport = visibleArea == null ? null : pad(visibleArea);
+            fullSync = true;
+        }
+    }
+
+    /** POI shown by the given marker, or null if it is a cluster or not one of ours. */
+    public PointOfInterest getPoi(MapMarker marker) {
+        Shown shown = shownByMarker.get(marker);
+        return shown == null ? null : shown.poi;
+    }
+
+    /** Cluster shown by the given marker, or null if it is a single point. */
+    public MarkerClusterer.Cluster getCluster(MapMarker marker) {
+        Shown shown = shownByMarker.get(marker);
+        return shown == null ? null : shown.cluster;
+    }
+
+    /** Applies the pending changes to the scene. Call on the UI thread. */
+    public void apply() {
+        List<Map.Entry<String, PointOfInterest>> changes;
+        boolean resync;
+        GeoBox area;
+        synchronized (pending) {
+            changes = new ArrayList<>(pending.entrySet());
+            pending.clear();
+            if (clustering) return; // The clusterer follows store changes itself
+            resync = fullSync;
+            fullSync = false;
+            area = viewport;
+        }
+
+        if (resync) {
+            syncWithStore(area);
+            return;
+        }
+
+        for (Map.Entry<String, PointOfInterest> change : changes) {
+            PointOfInterest poi = change.getValue();
+            if (poi == null || !isVisible(area, poi.coordinates)) hide(change.getKey());
+            else show(poi);
+        }
+    }
+
+    private void applyClusters(List<MarkerClusterer.Cluster> clusters) {
+        if (!clustering) return;
+
+        Map<String, MarkerClusterer.Cluster> desired = new HashMap<>();
+        for (MarkerClusterer.Cluster cluster : clusters) {
+            desired.put(cluster.single != null ? cluster.single.id : cluster.key, cluster);
+        }
+        for (String key : new ArrayList<>(shownByKey.keySet())) {
+            if (!desired.containsKey(key)) hide(key);
+        }
+        for (Map.Entry<String, MarkerClusterer.Cluster> entry : desired.entrySet()) {
+            MarkerClusterer.Cluster cluster = entry.getValue();
+            if (cluster.single != null) show(cluster.single);
+            else showCluster(entry.getKey(), cluster);
+        }
+    }
+
+    /** Takes every marker off the scene; the next {@link #apply()} redraws from the store. */
+    public void clear() {
+        for (Shown shown : shownByKey.values()) mapScene.removeMapMarker(shown.marker);
+        shownByKey.clear();
+        shownByMarker.clear();
+        synchronized (pending) {
+            pending.clear();
+            fullSync = true;
+        }
+    }
+
+    public void dispose() {
+        store.removeListener(this);
+        clusterer.dispose();
+    }
+
+    // Full diff against the store, used for the first draw, after clear() and on viewport changes
+    private void syncWithStore(GeoBox area) {
+        List<PointOfInterest> visible = area == null ? store.getAll() : store.getInBox(null, area);
+        Map<String, PointOfInterest> desired = new HashMap<>();
+        for (PointOfInterest poi : visible) desired.put(poi.id, poi);
+
+        for (String key : new ArrayList<>(shownByKey.keySet())) {
+            if (!desired.containsKey(key)) hide(key);
+        }
+        for (PointOfInterest poi : visible) show(poi);
+    }
+
+    private void show(PointOfInterest poi) {
+        Shown shown = shownByKey.get(poi.id);
+        if (shown != null) {
+            if (poi.equals(shown.poi)) return;
+            if (shown.poi == null || !shown.poi.type.equals(poi.type)) {
+                // A different icon needs a new marker
+                hide(poi.id);
+            } else {
+                shown.marker.setCoordinates(poi.coordinates);
+                shown.marker.setMetadata(buildMetadata(poi));
+                put(poi.id, new Shown(poi, null, shown.marker));
+                return;
+            }
+        }
+
+        MapMarker marker = new MapMarker(poi.coordinates);
+        marker.addImage(PoiIconCache.getImage(resources, poi.type), PoiIconCache.getStyle(PoiIconCache.DEFAULT_SCALE));
+        marker.setMetadata(buildMetadata(poi));
+        mapScene.addMapMarker(marker);
+        put(poi.id, new Shown(poi, null, marker));
+    }
+
+    private void showCluster(String key, MarkerClusterer.Cluster cluster) {
+        Shown shown = shownByKey.get(key);
+        if (shown != null && shown.cluster != null && shown.cluster.count == cluster.count) {
+            // Same badge, the centroid may still have shifted
+            shown.marker.setCoordinates(cluster.center);
+            put(key, new Shown(null, cluster, shown.marker));
+            return;
+        }
+        hide(key);
+
+        MapMarker marker = new MapMarker(cluster.center);
+        marker.addImage(PoiIconCache.getClusterImage(resources, cluster.type, cluster.count),
+                PoiIconCache.getStyle(PoiIconCache.DEFAULT_SCALE));
+        Metadata metadata = new Metadata();
+        metadata.setString("title", cluster.count + " " + cluster.type + " reports");
+        metadata.setString("description", "Zoom in to see them individually");
+        marker.setMetadata(metadata);
+        mapScene.addMapMarker(marker);
+        put(key, new Shown(null, cluster, marker));
+    }
+
+    private void put(String key, Shown shown) {
+        shownByKey.put(key, shown);
+        shownByMarker.put(shown.marker, shown);
+    }
+
+    private void hide(String key) {
+        Shown shown = shownByKey.remove(key);
+        if (shown == null) return;
+        mapScene.removeMapMarker(shown.marker);
+        shownByMarker.remove(shown.marker);
+    }
+
+    private static Metadata buildMetadata(PointOfInterest poi) {
+        Metadata metadata = new Metadata();
+        metadata.setString("id", poi.id);
+        metadata.setString("title", poi.title + (poi.userSubmitted?" (User)":" (Drone)"));
+        String description = "Description: " + ((poi.description.isEmpty())?"N/A":poi.description);
+        if (poi.hits > 1) {
+            description += "\nReported " + poi.hits + " times, last " + DateUtils.getRelativeTimeSpanString(poi.lastSeen);
+        }
+        metadata.setString("description", description);
+        return metadata;
+    }
+
+    private static boolean isVisible(GeoBox area, GeoCoordinates coordinates) {
+        return area == null || PoiStore.contains(area, coordinates);
+    }
+
+    private static boolean sameArea(GeoBox a, GeoBox b) {
+        if (a == null || b == null) return a == b;
+        return a.southWestCorner.latitude == b.southWestCorner.latitude
+                && a.southWestCorner.longitude == b.southWestCorner.longitude
+                && a.northEastCorner.latitude == b.northEastCorner.latitude
+                && a.northEastCorner.longitude == b.northEastCorner.longitude;
+    }
+
+    private static GeoBox pad(GeoBox box) {
+        double latPad = (box.northEastCorner.latitude - box.southWestCorner.latitude) * VIEWPORT_PADDING;
+        double lonPad = (box.northEastCorner.longitude - box.southWestCorner.longitude) * VIEWPORT_PADDING;
+        return new GeoBox(
+                new GeoCoordinates(box.southWestCorner.latitude - latPad, box.southWestCorner.longitude - lonPad),
+                new GeoCoordinates(box.northEastCorner.latitude + latPad, box.northEastCorner.longitude + lonPad));
+    }
+}
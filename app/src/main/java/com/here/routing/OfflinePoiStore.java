@@ -0,0 +1,416 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import com.here.sdk.core.GeoCoordinates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * On-device copy of the shared POIs so the map can render before the network answers.
+ *
+ * State lives in a compact binary snapshot, read through a memory-mapped buffer, plus an
+ * append-only log of every change since. The log also works as an outbox: local adds and
+ * removes are logged before they are sent and acknowledged once the bin accepted them. A
+ * failed write is retried with exponential backoff while the app runs, and writes that never
+ * made it are sent again on the next start. Replaying the log at startup
+ * restores the state; once it grows past a limit it is folded into a new snapshot.
+ */
+public class OfflinePoiStore implements PoiStore.ChangeListener {
+    private static final String TAG = OfflinePoiStore.class.getSimpleName();
+    private static final int SNAPSHOT_MAGIC = 0x53525053; // "SRPS"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int COMPACT_AFTER_RECORDS = 1000;
+    private static final long MIN_RETRY_MILLIS = 5000, MAX_RETRY_MILLIS = 5 * 60 * 1000;
+
+    private static final byte RECORD_PUT = 1, RECORD_DELETE = 2, RECORD_OP = 3, RECORD_ACK = 4;
+
+    private final File snapshotFile, logFile;
+    private final PoiStore store;
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    private final Random random = new Random();
+
+    // Guarded by itself; op id -> local write not yet acknowledged by the bin
+    private final Map<String, SyncOperation> outstanding = new LinkedHashMap<>();
+    // Only touched on the executor after load()
+    private DataOutputStream log;
+    private int logRecords;
+    // Executor only; op id -> failed attempts so far
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    public OfflinePoiStore(File directory, PoiStore store) {
+        this.snapshotFile = new File(directory, "poi_snapshot.bin");
+        this.logFile = new File(directory, "poi_wal.log");
+        this.store = store;
+        // Pending retries are dropped on dispose, the log resends them on the next start
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Loads the snapshot and replays the log into the store, then starts persisting store
+     * changes and resends writes that were never acknowledged. Runs on the calling thread so
+     * the first frame can already show the stored points; returns the number loaded.
+     */
+    public int load() {
+        Map<String, PointOfInterest> points = new LinkedHashMap<>();
+        try {
+            readSnapshot(points);
+            logRecords = replayLog(points);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read offline POIs, starting empty", e);
+            points.clear();
+            synchronized (outstanding) { outstanding.clear(); }
+        }
+
+        for (PointOfInterest poi : points.values()) store.add(poi);
+        store.addListener(this);
+
+        List<SyncOperation> resend;
+        synchronized (outstanding) { resend = new ArrayList<>(outstanding.values()); }
+        executor.execute(() -> {
+            try {
+                log = new DataOutputStream(new FileOutputStream(logFile, true));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open offline log", e);
+            }
+            for (SyncOperation op : resend) send(op);
+        });
+        Log.d(TAG, "Loaded " + points.size() + " offline POIs, resending " + resend.size() + " writes");
+        return points.size();
+    }
+
+    /** Adds a point locally and queues it for the bin; survives restarts until acknowledged. */
+    public void addPOI(PointOfInterest poi) {
+        SyncOperation op = SyncOperation.add(JsonApi.getClientId(), poi);
+        op.createsPoi = store.add(poi);
+        submit(op);
+    }
+
+    /** Removes a point locally and queues the removal for the bin. */
+    public void removePOI(PointOfInterest poi) {
+        store.remove(poi);
+        submit(SyncOperation.remove(JsonApi.getClientId(), poi));
+    }
+
+    /** Ids of the points with local writes the bin has not acknowledged yet. */
+    public Set<String> getPendingPoiIds() {
+        Set<String> ids = new HashSet<>();
+        synchronized (outstanding) {
+            for (SyncOperation op : outstanding.values()) ids.add(op.poiId);
+        }
+        return ids;
+    }
+
+    private void submit(SyncOperation op) {
+        // Outstanding right away, so a fetch that lands before the write does not undo it
+        synchronized (outstanding) { outstanding.put(op.opId, op); }
+        executor.execute(() -> {
+            append(RECORD_OP, () -> encodeOperation(op));
+            send(op);
+        });
+    }
+
+    // Runs on the executor
+    private void send(SyncOperation op) {
+        boolean queued = JsonApi.submitInBackground(op, (sent, error) -> {
+            // Disposed meanwhile; the log still has the write for the next start
+            if (executor.isShutdown()) return;
+            executor.execute(() -> onSent(sent, error));
+        });
+        if (!queued) retry(op);
+    }
+
+    // Runs on the executor
+    private void onSent(SyncOperation sent, String error) {
+        if (error != null) {
+            retry(sent);
+            return;
+        }
+        failures.remove(sent.opId);
+        SyncOperation acknowledged;
+        synchronized (outstanding) { acknowledged = outstanding.remove(sent.opId); }
+        if (acknowledged != null) append(RECORD_ACK, () -> encodeString(sent.opId));
+    }
+
+    // Runs on the executor. Full jitter up to an exponential cap, like failed feed polls
+    private void retry(SyncOperation op) {
+        synchronized (outstanding) {
+            if (!outstanding.containsKey(op.opId)) return;
+        }
+        Integer previous = failures.get(op.opId);
+        int attempts = previous == null ? 1 : previous + 1;
+        failures.put(op.opId, attempts);
+        long cap = Math.min(MAX_RETRY_MILLIS, MIN_RETRY_MILLIS << Math.min(attempts - 1, 16));
+        long delay = Math.max(MIN_RETRY_MILLIS / 2, (long) (random.nextDouble() * cap));
+        Log.d(TAG, "Write of " + op + " failed " + attempts + " times, retrying in " + delay + " ms");
+        executor.schedule(() -> send(op), delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onPoiAdded(PointOfInterest poi) {
+        if (!PointOfInterest.isShared(poi.type)) return;
+        executor.execute(() -> append(RECORD_PUT, () -> encodePoi(poi)));
+    }
+
+    @Override
+    public void onPoiRemoved(PointOfInterest poi) {
+        if (!PointOfInterest.isShared(poi.type)) return;
+        executor.execute(() -> append(RECORD_DELETE, () -> encodeString(poi.id)));
+    }
+
+    @Override
+    public void onPoiUpdated(PointOfInterest previous, PointOfInterest poi) {
+        onPoiAdded(poi);
+    }
+
+    public void dispose() {
+        store.removeListener(this);
+        executor.execute(this::closeLog);
+        executor.shutdown();
+    }
+
+    private interface Payload {
+        byte[] encode() throws IOException;
+    }
+
+    // Runs on the executor
+    private void append(byte kind, Payload payload) {
+        if (log == null) return;
+        try {
+            writeRecord(kind, payload.encode());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not append to offline log", e);
+            return;
+        }
+        if (++logRecords >= COMPACT_AFTER_RECORDS) compact();
+    }
+
+    // One checksummed record, without counting it towards compaction
+    private void writeRecord(byte kind, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(kind);
+        crc.update(bytes);
+        log.writeInt(bytes.length + 1);
+        log.writeInt((int) crc.getValue());
+        log.writeByte(kind);
+        log.write(bytes);
+        log.flush();
+    }
+
+    /** Writes the current shared POIs as a new snapshot and restarts the log with the outbox only. */
+    private void compact() {
+        try {
+            closeLog();
+
+            File tmpSnapshot = new File(snapshotFile.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpSnapshot))) {
+                List<PointOfInterest> shared = new ArrayList<>();
+                for (PointOfInterest poi : store.getAll()) if (PointOfInterest.isShared(poi.type)) shared.add(poi);
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(shared.size());
+                for (PointOfInterest poi : shared) out.write(encodePoi(poi));
+            }
+            if (!tmpSnapshot.renameTo(snapshotFile)) throw new IOException("Could not replace snapshot");
+
+            File tmpLog = new File(logFile.getPath() + ".tmp");
+            log = new DataOutputStream(new FileOutputStream(tmpLog));
+            List<SyncOperation> pending;
+            synchronized (outstanding) { pending = new ArrayList<>(outstanding.values()); }
+            // Written raw, so a large outbox cannot trigger another compaction from in here
+            for (SyncOperation op : pending) writeRecord(RECORD_OP, encodeOperation(op));
+            logRecords = 0;
+            closeLog();
+            if (!tmpLog.renameTo(logFile)) throw new IOException("Could not replace log");
+
+            log = new DataOutputStream(new FileOutputStream(logFile, true));
+            Log.d(TAG, "Compacted offline store, " + pending.size() + " writes outstanding");
+        } catch (IOException e) {
+            Log.e(TAG, "Offline store compaction failed", e);
+            try {
+                log = new DataOutputStream(new FileOutputStream(logFile, true));
+            } catch (IOException reopen) {
+                Log.e(TAG, "Could not reopen offline log", reopen);
+            }
+        }
+    }
+
+    private void closeLog() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close offline log", e);
+        }
+        log = null;
+    }
+
+    private void readSnapshot(Map<String, PointOfInterest> points) throws IOException {
+        if (!snapshotFile.exists()) return;
+        ByteBuffer buffer = map(snapshotFile);
+        if (buffer.getInt() != SNAPSHOT_MAGIC) throw new IOException("Unknown snapshot format");
+        int version = buffer.getInt();
+        if (version < 1 || version > SNAPSHOT_VERSION) throw new IOException("Unknown snapshot version " + version);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            PointOfInterest poi = decodePoi(buffer, version);
+            points.put(poi.id, poi);
+        }
+    }
+
+    // Applies every intact record; a torn tail from a crash mid-append is ignored
+    private int replayLog(Map<String, PointOfInterest> points) throws IOException {
+        if (!logFile.exists()) return 0;
+        ByteBuffer buffer = map(logFile);
+        int records = 0;
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) break;
+
+            byte[] record = new byte[length];
+            buffer.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) break;
+
+            ByteBuffer payload = ByteBuffer.wrap(record, 1, length - 1);
+            switch (record[0]) {
+                case RECORD_PUT:
+                    PointOfInterest poi = decodePoi(payload, SNAPSHOT_VERSION);
+                    points.put(poi.id, poi);
+                    break;
+                case RECORD_DELETE:
+                    points.remove(decodeString(payload));
+                    break;
+                case RECORD_OP:
+                    SyncOperation op = decodeOperation(payload);
+                    synchronized (outstanding) { outstanding.put(op.opId, op); }
+                    break;
+                case RECORD_ACK:
+                    String opId = decodeString(payload);
+                    synchronized (outstanding) { outstanding.remove(opId); }
+                    break;
+            }
+            records++;
+        }
+        return records;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static byte[] encodePoi(PointOfInterest poi) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, poi.id);
+        writeString(out, poi.type);
+        writeString(out, poi.title);
+        writeString(out, poi.description);
+        out.writeDouble(poi.coordinates.latitude);
+        out.writeDouble(poi.coordinates.longitude);
+        out.writeBoolean(poi.userSubmitted);
+        out.writeInt(poi.hits);
+        out.writeLong(poi.lastSeen);
+        return bytes.toByteArray();
+    }
+
+    private static PointOfInterest decodePoi(ByteBuffer in, int version) {
+        String id = decodeString(in);
+        String type = decodeString(in);
+        String title = decodeString(in);
+        String description = decodeString(in);
+        GeoCoordinates coordinates = new GeoCoordinates(in.getDouble(), in.getDouble());
+        boolean userSubmitted = in.get() != 0;
+        // Version 1 predates hit counts; log records written back then simply end here
+        if (version < 2 || in.remaining() < 12) {
+            return new PointOfInterest(id, type, title, description, coordinates, userSubmitted);
+        }
+        return new PointOfInterest(id, type, title, description, coordinates, userSubmitted, in.getInt(), in.getLong());
+    }
+
+    private static byte[] encodeOperation(SyncOperation op) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, op.opId);
+        writeString(out, op.clientId);
+        out.writeBoolean(op.kind == SyncOperation.Kind.ADD);
+        writeString(out, op.poiId);
+        writeString(out, op.type);
+        writeString(out, op.title);
+        writeString(out, op.description);
+        out.writeDouble(op.latitude);
+        out.writeDouble(op.longitude);
+        out.writeBoolean(op.userSubmitted);
+        out.writeLong(op.lastSeen);
+        out.writeInt(op.hits);
+        return bytes.toByteArray();
+    }
+
+    private static SyncOperation decodeOperation(ByteBuffer in) {
+        SyncOperation op = new SyncOperation();
+        op.opId = decodeString(in);
+        op.clientId = decodeString(in);
+        op.kind = in.get() != 0 ? SyncOperation.Kind.ADD : SyncOperation.Kind.REMOVE;
+        op.poiId = decodeString(in);
+        op.type = decodeString(in);
+        op.title = decodeString(in);
+        op.description = decodeString(in);
+        op.latitude = in.getDouble();
+        op.longitude = in.getDouble();
+        op.userSubmitted = in.get() != 0;
+        // Records logged before lastSeen, and then hits, existed end here
+        if (in.remaining() >= 8) op.lastSeen = in.getLong();
+        if (in.remaining() >= 4) op.hits = in.getInt();
+        return op;
+    }
+
+    private static byte[] encodeString(String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeString(new DataOutputStream(bytes), value);
+        return bytes.toByteArray();
+    }
+
+    // Length-prefixed UTF-8, -1 for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String decodeString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,206 @@
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Subscribes to the self-hosted bin's server-sent event stream, so adds and removes by other
+ * clients show up without waiting for the next poll. The stream is read on its own thread and
+ * reopened with jittered backoff when it drops, sending the last event id so the bin replays
+ * what was missed in between. Events are parsed on the stream thread and handed to the
+ * {@link Listener} on the main thread, a burst at a time.
+ *
+ * While the stream is down the caller keeps polling; {@link #isConnected} tells it when it
+ * can stop.
+ */
+public class PoiEventStream {
+    private static final String TAG = PoiEventStream.class.getSimpleName();
+    private static final int READ_TIMEOUT_MILLIS = 45000; // Three missed heartbeats
+    private static final long MIN_RETRY_MILLIS = 1000, MAX_RETRY_MILLIS = 30000;
+
+    public interface Listener {
+        // All called on the main thread, and only while started
+        void onChanges(List<Change> changes);
+        // The bin could not replay everything since the last event; refetch it
+        void onMissedEvents();
+        void onConnectionChanged(boolean connected);
+    }
+
+    public static class Change {
+        public final boolean removed;
+        public final PointOfInterest poi;
+
+        Change(boolean removed, PointOfInterest poi) {
+            this.removed = removed;
+            this.poi = poi;
+        }
+    }
+
+    private final String url;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private volatile Thread thread;
+    private volatile HttpURLConnection connection;
+    private volatile boolean connected;
+    // Kept across restarts so a resumed stream picks up where it stopped
+    private volatile String lastEventId;
+
+    public PoiEventStream(String url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    /** Opens the stream unless it is already running. Main thread only. */
+    public void start() {
+        if (thread != null) return;
+        Thread started = new Thread(this::run, TAG);
+        thread = started;
+        started.start();
+    }
+
+    /** Closes the stream; nothing is delivered after this returns. Main thread only. */
+    public void stop() {
+        Thread current = thread;
+        if (current == null) return;
+        thread = null;
+        current.interrupt();
+        HttpURLConnection open = connection;
+        // Unblocks the pending read
+        if (open != null) open.disconnect();
+        connected = false;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private boolean isRunning() {
+        return thread == Thread.currentThread();
+    }
+
+    private void run() {
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (isRunning()) {
+            try {
+                if (read()) retryMillis = MIN_RETRY_MILLIS;
+            } catch (IOException e) {
+                if (!isRunning()) return;
+                Log.d(TAG, "Event stream dropped: " + e.getMessage());
+            }
+            setConnected(false);
+            try {
+                // Full jitter keeps clients from reconnecting in lockstep after a bin restart
+                Thread.sleep(retryMillis / 2 + (long) (random.nextDouble() * retryMillis / 2));
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    // Reads one connection until it ends; returns whether any event came through
+    private boolean read() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        for (Map.Entry<String, String> header : JsonApi.binHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        connection.setRequestProperty("Accept", "text/event-stream");
+        if (lastEventId != null) connection.setRequestProperty("Last-Event-ID", lastEventId);
+        connection.setConnectTimeout(10000);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        this.connection = connection;
+        // stop() may have missed the connection while it was being opened
+        if (!isRunning()) {
+            connection.disconnect();
+            return false;
+        }
+
+        boolean received = false;
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Event stream failed with response code " + connection.getResponseCode());
+            }
+            setConnected(true);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            List<Change> changes = new ArrayList<>();
+            String event = null, id = null;
+            StringBuilder data = new StringBuilder();
+            String line;
+            while (isRunning() && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (data.length() > 0) {
+                        received = true;
+                        if (id != null) lastEventId = id;
+                        if ("reset".equals(event)) {
+                            changes.clear();
+                            deliver(listener::onMissedEvents);
+                        } else {
+                            Change change = parse(event, data.toString());
+                            if (change != null) changes.add(change);
+                        }
+                    }
+                    // Replays and bursts arrive together; hand them over once the reader drained them
+                    if (!changes.isEmpty() && !reader.ready()) {
+                        List<Change> batch = changes;
+                        changes = new ArrayList<>();
+                        deliver(() -> listener.onChanges(batch));
+                    }
+                    event = null;
+                    id = null;
+                    data.setLength(0);
+                } else if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    if (data.length() > 0) data.append('\n');
+                    data.append(line.substring(5).trim());
+                } else if (line.startsWith("id:")) {
+                    id = line.substring(3).trim();
+                }
+                // Lines starting with ':' are heartbeats
+            }
+        } finally {
+            connection.disconnect();
+            this.connection = null;
+        }
+        return received;
+    }
+
+    private static Change parse(String event, String data) {
+        boolean removed = "remove".equals(event);
+        if (!removed && !"add".equals(event)) return null;
+        try {
+            return new Change(removed, PoiFeedParser.GSON.fromJson(data, PointOfInterest.class));
+        } catch (RuntimeException e) {
+            Log.e("ERROR", "Bad POI event: " + data);
+            return null;
+        }
+    }
+
+    private void setConnected(boolean connected) {
+        if (this.connected == connected) return;
+        this.connected = connected;
+        deliver(() -> listener.onConnectionChanged(connected));
+    }
+
+    private void deliver(Runnable callback) {
+        Thread reader = Thread.currentThread();
+        mainHandler.post(() -> {
+            // Dropped if the stream was stopped or restarted since
+            if (thread == reader) callback.run();
+        });
+    }
+}
@@ -0,0 +1,104 @@
+package com.here.routing;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass reader for the JsonBin POI feed. Walks the response with a {@link JsonReader}
+ * straight to {@code record.points} and decodes one point at a time, so the document is never
+ * materialised as a string or a full JSON tree.
+ */
+public final class PoiFeedParser {
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(PointOfInterest.class, new PointOfInterestDeserializer())
+            .create();
+    public static final Type POINT_LIST_TYPE = new TypeToken<ArrayList<PointOfInterest>>() {}.getType();
+
+    private PoiFeedParser() {}
+
+    /** Parses a full bin response ({@code {"record": {"points": [...]}}}). */
+    public static List<PointOfInterest> parseFeed(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            List<PointOfInterest> points = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("record")) readRecord(reader, points);
+                else reader.skipValue();
+            }
+            reader.endObject();
+            return points;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Parses a bare points array. */
+    public static List<PointOfInterest> parsePoints(Reader in) {
+        return GSON.fromJson(in, POINT_LIST_TYPE);
+    }
+
+    /** Reads the points array of a bin response as a mutable tree, for read-modify-write. */
+    public static JsonArray readPointsTree(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            JsonElement root = JsonParser.parseReader(reader);
+            JsonObject record = root.getAsJsonObject().getAsJsonObject("record");
+            JsonArray points = record == null ? null : record.getAsJsonArray("points");
+            return points != null ? points : new JsonArray();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Writes {@code {"points": [...]}} directly to the stream. */
+    public static void writePoints(JsonArray points, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.beginObject();
+        jsonWriter.name("points");
+        GSON.toJson(points, jsonWriter);
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    private static void readRecord(JsonReader reader, List<PointOfInterest> points) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("points") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                points.add(GSON.fromJson(reader, PointOfInterest.class));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+}
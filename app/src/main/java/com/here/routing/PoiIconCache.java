@@ -0,0 +1,139 @@
+package com.here.routing;
+
+import android.annotation.SuppressLint;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+
+import com.here.sdk.mapviewlite.MapImage;
+import com.here.sdk.mapviewlite.MapImageFactory;
+import com.here.sdk.mapviewlite.MapMarkerImageStyle;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Marker images shared by every POI of the same type and style. Each drawable is decoded
+ * once, on first use, instead of once per point.
+ */
+public final class PoiIconCache {
+    private static final String TAG = PoiIconCache.class.getSimpleName();
+    public static final float DEFAULT_SCALE = 1f;
+
+    private static final Map<String, MapImage> images = new HashMap<>();
+    private static final Map<Float, MapMarkerImageStyle> styles = new HashMap<>();
+    private static int decodes, hits;
+    private static long estimatedBytes;
+
+    private PoiIconCache() {}
+
+    public static MapImage getImage(Resources resources, String type) {
+        return getImage(resources, type, DEFAULT_SCALE);
+    }
+
+    public static synchronized MapImage getImage(Resources resources, String type, float scale) {
+        String key = type + "@" + scale;
+        MapImage image = images.get(key);
+        if (image != null) {
+            hits++;
+            return image;
+        }
+
+        int resourceId = resourceFor(type);
+        image = MapImageFactory.fromResource(resources, resourceId);
+        images.put(key, image);
+        decodes++;
+        estimatedBytes += decodedSize(resources, resourceId);
+        return image;
+    }
+
+    /** The type's icon with a count badge; counts are bucketed so only a few variants exist. */
+    public static synchronized MapImage getClusterImage(Resources resources, String type, int count) {
+        String label = count < 10 ? String.valueOf(count) : count < 100 ? (count / 10 * 10) + "+" : "99+";
+        String key = type + "#" + label;
+        MapImage image = images.get(key);
+        if (image != null) {
+            hits++;
+            return image;
+        }
+
+        Bitmap icon = BitmapFactory.decodeResource(resources, resourceFor(type));
+        int badgeRadius = Math.max(icon.getWidth(), icon.getHeight()) / 3;
+        Bitmap badged = Bitmap.createBitmap(icon.getWidth() + badgeRadius, icon.getHeight() + badgeRadius, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(badged);
+        canvas.drawBitmap(icon, 0, badgeRadius, null);
+
+        Paint circle = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circle.setColor(Color.RED);
+        float cx = badged.getWidth() - badgeRadius, cy = badgeRadius;
+        canvas.drawCircle(cx, cy, badgeRadius, circle);
+
+        Paint text = new Paint(Paint.ANTI_ALIAS_FLAG);
+        text.setColor(Color.WHITE);
+        text.setFakeBoldText(true);
+        text.setTextAlign(Paint.Align.CENTER);
+        text.setTextSize(badgeRadius * (label.length() > 2 ? 0.8f : 1.1f));
+        canvas.drawText(label, cx, cy - (text.ascent() + text.descent()) / 2, text);
+        icon.recycle();
+
+        image = MapImageFactory.fromBitmap(badged);
+        images.put(key, image);
+        decodes++;
+        estimatedBytes += badged.getByteCount();
+        return image;
+    }
+
+    public static synchronized MapMarkerImageStyle getStyle(float scale) {
+        MapMarkerImageStyle style = styles.get(scale);
+        if (style == null) {
+            style = new MapMarkerImageStyle();
+            style.setScale(scale);
+            styles.put(scale, style);
+        }
+        return style;
+    }
+
+    public static int resourceFor(String type) {
+        switch (type) {
+            case "origin":
+                return R.drawable.blue_dot;
+            case "hazard":
+                return R.drawable.hazard_icon;
+            case "touchPoint":
+                return R.drawable.green_dot;
+            case "people":
+                return R.drawable.person_icon;
+            default:
+                return 0;
+        }
+    }
+
+    @SuppressLint("DefaultLocale")
+    public static synchronized String getStats() {
+        int requests = decodes + hits;
+        return String.format("%d icons cached, %d decodes for %d requests (%.1f%% hits), ~%d KB",
+                images.size(), decodes, requests, requests == 0 ? 0 : 100.0 * hits / requests, estimatedBytes / 1024);
+    }
+
+    /** Drops the cached images; markers already on a scene keep theirs. Call from onDestroy. */
+    public static synchronized void release() {
+        Log.d(TAG, "Releasing icon cache: " + getStats());
+        images.clear();
+        styles.clear();
+        decodes = 0;
+        hits = 0;
+        estimatedBytes = 0;
+    }
+
+    // ARGB_8888 size of the decoded drawable, read from its bounds without decoding the pixels
+    private static long decodedSize(Resources resources, int resourceId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+        return (long) options.outWidth * options.outHeight * 4;
+    }
+}
@@ -0,0 +1,530 @@
+package com.here.routing;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.core.errors.InstantiationErrorException;
+import com.here.sdk.routing.AvoidanceOptions;
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.Route;
+import com.here.sdk.routing.RoutingEngine;
+import com.here.sdk.routing.TrafficOptimizationMode;
+import com.here.sdk.routing.Waypoint;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Application-scoped home of the state that should outlive one activity: the POI store and
+ * its offline copy, feed polling, push and delta sync, location tracking and alerts, the routing engine
+ * with its caches, and the current destination and route. {@link RoutingExample} is only a
+ * view on top of it; an activity recreated after a configuration change attaches to the same
+ * repository and redraws from memory, without fetching or routing again.
+ *
+ * The phone also hosts the {@link TelemetryServer} here when the app was built with a drone
+ * key: drones on the same Wi-Fi network are pointed at its address and stream sensor readings
+ * to {@link #TELEMETRY_PORT}, which fill the {@link SensorSeriesStore} and report threshold
+ * hazards. A self-hosted bin merges those like any other detection; with JsonBin the phone
+ * merges repeat sightings itself.
+ *
+ * Only the application context is kept, and the attached {@link Observer} is dropped in
+ * {@link #detach}, so no activity outlives its own lifecycle. Everything here is meant to be
+ * used from the main thread. {@link #release} tears it down once the app is really leaving.
+ */
+public class PoiRepository {
+    private static final String TAG = PoiRepository.class.getSimpleName();
+    private static final long ACTIVE_POLL_MILLIS = 20 * 1000, IDLE_POLL_MILLIS = 2 * 60 * 1000;
+    private static final double NEAR_HAZARD_METERS = 3000;
+    private static final int ROUTE_ALTERNATIVES = 2;
+    // New hazards this close to the active route trigger a reroute, at most once per burst
+    private static final double REROUTE_CORRIDOR_METERS = 30;
+    private static final long REROUTE_QUIET_MILLIS = 3000, REROUTE_MAX_DELAY_MILLIS = 10000;
+    // Hazards alert when the user comes this close, and re-arm once they are past the exit radius
+    private static final double HAZARD_ALERT_METERS = 200, HAZARD_ALERT_EXIT_METERS = 300;
+    // Must match TELEMETRY_PORT in the drone sketch
+    public static final int TELEMETRY_PORT = 9090;
+    // Same radius the bin server merges detections within
+    private static final double DETECTION_MERGE_METERS = 15;
+
+    @SuppressLint("StaticFieldLeak") // Application context only
+    private static PoiRepository instance;
+
+    public interface Observer {
+        // All called on the main thread, and only while attached
+        void onPoisChanged();
+        // A new route to show, or null once it was cleared
+        void onRouteChanged(PreparedRoute route);
+        void onRouteFailed(String error);
+        void onPositionChanged(GeoCoordinates position, boolean firstFix);
+        void onHazardNearby(PointOfInterest hazard, double distanceMeters);
+    }
+
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PoiStore poiStore = PointOfInterest.getStore();
+    private final SensorSeriesStore sensorStore = SensorSeriesStore.get();
+    private final OfflinePoiStore offlineStore;
+    private final ExpiryEngine expiryEngine;
+    private final RoutingEngine routingEngine;
+    private final AvoidancePlanner avoidancePlanner = new AvoidancePlanner(poiStore, 15, AvoidancePlanner.DEFAULT_MAX_AREAS);
+    private final RouteCache routeCache = new RouteCache(poiStore, 16);
+    private final RouteScorer routeScorer = new RouteScorer(poiStore);
+    private final ActiveRouteMonitor routeMonitor;
+    private final ExecutorService routeWorker = Executors.newSingleThreadExecutor();
+    private final LocationTracker locationTracker;
+    private final ProximityAlerter proximityAlerter;
+    // Null without a drone key, or if the port could not be bound
+    private final TelemetryServer telemetryServer;
+    private final FeedPollScheduler pollScheduler = new FeedPollScheduler(this::fetchAndUpdateMap, this::pollIntervalMillis);
+    // Null for JsonBin, which has no push channel
+    private final PoiEventStream eventStream;
+
+    private Observer observer;
+    // Until the first fix arrives routes start from London Firehouse 4
+    private GeoCoordinates currentCoords = new GeoCoordinates(42.981485, -81.238093);
+    private PointOfInterest originPoint;
+    private boolean hasFix;
+    private PointOfInterest destinationPoint;
+    // The last point tapped on the map, still needed when the submit form returns to a new activity
+    private PointOfInterest touchPoint;
+    private PreparedRoute route;
+    // Bumped whenever the route is asked for or cleared, so late results of older requests are dropped
+    private int routeRequest;
+
+    public static synchronized PoiRepository get(Context context) {
+        if (instance == null) instance = new PoiRepository(context.getApplicationContext());
+        return instance;
+    }
+
+    /** Disposes the repository; the next {@link #get} starts over. */
+    public static synchronized void release() {
+        if (instance == null) return;
+        instance.dispose();
+        instance = null;
+    }
+
+    private PoiRepository(Context appContext) {
+        this.appContext = appContext;
+        try {
+            routingEngine = new RoutingEngine();
+        } catch (InstantiationErrorException e) {
+            throw new RuntimeException("Initialization of RoutingEngine failed: " + e.error.name());
+        }
+
+        originPoint = new PointOfInterest("origin", "Current location", "London Firehouse 4", currentCoords, false);
+        poiStore.add(originPoint);
+
+        JsonApi.loadClientId(appContext);
+        // A self-hosted bin takes operations instead of whole-document writes and tells us about others'
+        String syncUrl = JsonApi.getSyncUrl();
+        if (syncUrl != null) JsonApi.enableDeltaSync(new HttpSyncTransport(syncUrl), new SyncListener());
+
+        // Show the points from the last session right away, the fetch below reconciles them
+        offlineStore = new OfflinePoiStore(appContext.getFilesDir(), poiStore);
+        offlineStore.load();
+
+        // Stale reports are dropped here and removed from the bin in one batched write
+        expiryEngine = new ExpiryEngine(poiStore, ExpiryEngine.DEFAULT_POLICY, expired -> {
+            for (PointOfInterest poi : expired) offlineStore.removePOI(poi);
+            mainHandler.post(() -> {
+                for (PointOfInterest poi : expired) if (isDestination(poi)) clearRoute();
+                notifyPoisChanged();
+            });
+        });
+
+        telemetryServer = startTelemetryServer();
+
+        routeMonitor = new ActiveRouteMonitor(poiStore, REROUTE_CORRIDOR_METERS,
+                REROUTE_QUIET_MILLIS, REROUTE_MAX_DELAY_MILLIS, hazards -> mainHandler.post(() -> {
+                    // The route may have been cleared while the reports settled
+                    if (destinationPoint == null || route == null) return;
+                    addRoute(currentCoords, destinationPoint.coordinates);
+                }));
+
+        fetchAndUpdateMap();
+        // Other clients' changes are pushed by a self-hosted bin; polling covers the gaps
+        String eventsUrl = JsonApi.getEventsUrl();
+        eventStream = eventsUrl == null ? null : new PoiEventStream(eventsUrl, new EventListener());
+        if (eventStream != null) eventStream.start();
+        pollScheduler.resume();
+
+        proximityAlerter = new ProximityAlerter(poiStore, HAZARD_ALERT_METERS, HAZARD_ALERT_EXIT_METERS,
+                new ProximityAlerter.Listener() {
+                    @Override
+                    public void onEnter(PointOfInterest hazard, double distanceMeters) {
+                        mainHandler.post(() -> {
+                            if (observer != null) observer.onHazardNearby(hazard, distanceMeters);
+                        });
+                    }
+
+                    @Override
+                    public void onExit(PointOfInterest hazard) {
+                        Log.d(TAG, "Left hazard area: " + hazard.title);
+                    }
+                });
+        locationTracker = new LocationTracker(appContext, this::onLocation);
+        locationTracker.start();
+    }
+
+    public void attach(Observer observer) {
+        this.observer = observer;
+    }
+
+    public void detach(Observer observer) {
+        if (this.observer == observer) this.observer = null;
+    }
+
+    public PoiStore getStore() {
+        return poiStore;
+    }
+
+    public SensorSeriesStore getSensorStore() {
+        return sensorStore;
+    }
+
+    public GeoCoordinates getCurrentCoords() {
+        return currentCoords;
+    }
+
+    /** Marks a tapped location on the map; it stays the touch point until the next tap. */
+    public PointOfInterest placeTouchPoint(GeoCoordinates coordinates) {
+        touchPoint = new PointOfInterest("touchPoint", "Destination", "", coordinates, true);
+        poiStore.add(touchPoint);
+        return touchPoint;
+    }
+
+    /** The last tapped location, or null before the first tap. */
+    public PointOfInterest getTouchPoint() {
+        return touchPoint;
+    }
+
+    public PointOfInterest getDestination() {
+        return destinationPoint;
+    }
+
+    /** The route currently shown, or null. */
+    public PreparedRoute getRoute() {
+        return route;
+    }
+
+    public void fetchAndUpdateMap() {
+        fetchAndUpdateMap(null);
+    }
+
+    private void fetchAndUpdateMap(FeedPollScheduler.Callback done) {
+        JsonApi.syncInBackground();
+        JsonApi.fetchJsonData(appContext, new JsonApi.DataCallback() {
+            @Override
+            public void onSuccess(List<PointOfInterest> points) {
+                for (PointOfInterest poi : points) {
+                    Log.d("POI", "Loaded POI: " + poi.toString());
+                }
+                // Only the points that changed since the last fetch touch the map
+                PointOfInterest.mergeFetched(points, offlineStore.getPendingPoiIds());
+                notifyPoisChanged();
+                if (done != null) done.onComplete(true);
+            }
+
+            @Override
+            public void onNotModified() {
+                if (done != null) done.onComplete(true);
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e("ERROR", "Failed to fetch updated POIs: " + error);
+                if (done != null) done.onComplete(false);
+            }
+        });
+    }
+
+    public void pauseUpdates() {
+        pollScheduler.pause();
+        if (eventStream != null) eventStream.stop();
+        locationTracker.stop();
+    }
+
+    public void resumeUpdates() {
+        if (eventStream != null) eventStream.start();
+        pollScheduler.resume();
+        locationTracker.start();
+    }
+
+    public void addPOI(PointOfInterest poi) {
+        offlineStore.addPOI(poi);
+    }
+
+    public void removePOI(PointOfInterest poi) {
+        // Clear route if destination removed
+        if (isDestination(poi)) clearRoute();
+        offlineStore.removePOI(poi);
+    }
+
+    /** Routes from the current position to {@code destination}; the result arrives through the observer. */
+    public void routeTo(PointOfInterest destination) {
+        destinationPoint = destination;
+        addRoute(currentCoords, destination.coordinates);
+    }
+
+    // By id, since the stored point may have been replaced by a newer version since it was picked
+    private boolean isDestination(PointOfInterest poi) {
+        return destinationPoint != null && poi.id.equals(destinationPoint.id);
+    }
+
+    public void clearRoute() {
+        routeRequest++;
+        route = null;
+        routeMonitor.stop();
+        destinationPoint = null;
+        pollScheduler.reschedule();
+        if (observer != null) observer.onRouteChanged(null);
+    }
+
+    private void addRoute(GeoCoordinates start, GeoCoordinates end) {
+        int request = ++routeRequest;
+        List<GeoBox> avoidAreas = avoidancePlanner.plan(start, end, destinationPoint);
+        String cacheKey = RouteCache.key(start, end, avoidAreas);
+        Route cachedRoute = routeCache.get(cacheKey);
+        Log.d(TAG, "Route cache: " + routeCache.getStats());
+        if (cachedRoute != null) {
+            routeWorker.execute(() -> present(cachedRoute, request));
+            return;
+        }
+
+        Waypoint startWaypoint = new Waypoint(start);
+        Waypoint destinationWaypoint = new Waypoint(end);
+
+        List<Waypoint> waypoints =
+                new ArrayList<>(Arrays.asList(startWaypoint, destinationWaypoint));
+
+        calculateRoute(waypoints, avoidAreas, cacheKey, request);
+    }
+
+    private void calculateRoute(List<Waypoint> waypoints, List<GeoBox> avoidAreas, String cacheKey, int request) {
+        PointOfInterest destination = destinationPoint;
+        routingEngine.calculateRoute(
+                waypoints,
+                getCarOptions(avoidAreas),
+
+                (routingError, routes) -> {
+                    // On Route Calculated Callback
+                    if (request != routeRequest) return;
+                    if (routingError == null) {
+                        routeScorer.pickBest(routes, destination, best -> {
+                            Log.d(TAG, "Picked route of " + routes.size() + ": " + best);
+                            routeCache.put(cacheKey, best.route);
+                            present(best.route, request);
+                        });
+                    } else if (!avoidAreas.isEmpty()) {
+                        // Hazards block every way there; route through them and let scoring keep the exposure low
+                        Log.d(TAG, "No route around " + avoidAreas.size() + " areas (" + routingError + "), retrying without");
+                        calculateRoute(waypoints, new ArrayList<>(), cacheKey, request);
+                    } else if (observer != null) {
+                        observer.onRouteFailed(routingError.toString());
+                    }
+                });
+    }
+
+    // Runs on a worker thread; only publishing the result happens on the main thread
+    private void present(Route calculated, int request) {
+        PreparedRoute prepared = PreparedRoute.prepare(calculated);
+        mainHandler.post(() -> {
+            if (request != routeRequest) return;
+            route = prepared;
+            // The monitor checks against the full geometry, not the simplified display line
+            routeMonitor.watch(calculated.getGeometry().vertices, destinationPoint);
+            pollScheduler.reschedule();
+            if (observer != null) observer.onRouteChanged(prepared);
+        });
+    }
+
+    private CarOptions getCarOptions(List<GeoBox> avoidAreas) {
+        CarOptions carOptions = new CarOptions();
+        carOptions.routeOptions.enableTolls = true;
+        // Disabled - Traffic optimization is completely disabled, including long-term road closures. It helps in producing stable routes.
+        // Time dependent - Traffic optimization is enabled, the shape of the route will be adjusted according to the traffic situation which depends on departure time and arrival time.
+        carOptions.routeOptions.trafficOptimizationMode = TrafficOptimizationMode.DISABLED;
+        // Extra candidates for the scorer to choose from
+        carOptions.routeOptions.alternatives = ROUTE_ALTERNATIVES;
+
+        AvoidanceOptions avoidanceOptions = new AvoidanceOptions();
+        avoidanceOptions.avoidBoundingBoxAreas = avoidAreas;
+        carOptions.avoidanceOptions = avoidanceOptions;
+
+        return carOptions;
+    }
+
+    // Called on the tracker thread, only for positions that moved meaningfully
+    private void onLocation(GeoCoordinates position, float accuracyMeters) {
+        // Posted before matching, so a reroute the match triggers already starts from here
+        mainHandler.post(() -> currentCoords = position);
+        routeMonitor.onPosition(position);
+        proximityAlerter.onPosition(position);
+        mainHandler.post(() -> {
+            boolean firstFix = !hasFix;
+            hasFix = true;
+            originPoint = new PointOfInterest(originPoint.id, "origin", "Current location",
+                    "Within " + Math.round(accuracyMeters) + " m", position, false);
+            poiStore.update(originPoint);
+            if (route != null) Log.d(TAG, "Remaining on route: " + Math.round(routeMonitor.getRemainingMeters()) + " m");
+            if (observer != null) observer.onPositionChanged(position, firstFix);
+        });
+    }
+
+    private TelemetryServer startTelemetryServer() {
+        if (BuildConfig.TELEMETRY_KEY.isEmpty()) {
+            Log.d(TAG, "No drone key configured, telemetry server not started");
+            return null;
+        }
+        try {
+            // Any address, drones reach the phone through whatever network it shares with them; the key keeps others out
+            return new TelemetryServer(null, TELEMETRY_PORT, BuildConfig.TELEMETRY_KEY, sensorStore,
+                    TelemetryServer.DEFAULT_THRESHOLDS, detection -> mainHandler.post(() -> reportDetection(detection)));
+        } catch (IOException e) {
+            Log.e("ERROR", "Could not start telemetry server on port " + TELEMETRY_PORT + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void reportDetection(JsonObject detection) {
+        if (JsonApi.getDetectionsUrl() == null) {
+            mergeDetection(detection);
+            return;
+        }
+        JsonApi.ingestDetectionInBackground(detection, error -> {
+            if (error == null) return;
+            // Goes out through the outbox instead, which retries until the bin takes it
+            Log.e("ERROR", "Could not ingest detection, merging it locally: " + error);
+            mergeDetection(detection);
+        });
+    }
+
+    // Folds a detection into the nearest point of the same type and title, as the bin server's ingestor does
+    private void mergeDetection(JsonObject detection) {
+        String type = detection.get("type").getAsString();
+        String title = detection.get("title").getAsString();
+        String description = detection.get("description").getAsString();
+        GeoCoordinates coordinates = new GeoCoordinates(detection.get("latitude").getAsDouble(),
+                detection.get("longitude").getAsDouble());
+        long now = System.currentTimeMillis();
+
+        PointOfInterest match = null;
+        double matchMeters = Double.MAX_VALUE;
+        for (PointOfInterest poi : poiStore.getWithinRadius(type, coordinates, DETECTION_MERGE_METERS)) {
+            double meters = GeoMath.distanceMeters(coordinates, poi.coordinates);
+            if (poi.title.equals(title) && meters < matchMeters) {
+                match = poi;
+                matchMeters = meters;
+            }
+        }
+
+        PointOfInterest hazard;
+        if (match != null) {
+            hazard = new PointOfInterest(match.id, type, title, description, match.coordinates, match.userSubmitted,
+                    match.hits + 1, now);
+            poiStore.update(hazard);
+        } else {
+            // Derived from the spot, so phones that saw the same reading write the same point
+            String key = type + "|" + title + "|" + Geohash.encode(coordinates.latitude, coordinates.longitude, 8);
+            hazard = new PointOfInterest(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString(),
+                    type, title, description, coordinates, false, 1, now);
+        }
+        addPOI(hazard);
+        notifyPoisChanged();
+    }
+
+    // Applies other clients' operations as they are pulled, so they show up before the next fetch
+    private class SyncListener implements DeltaSyncClient.Listener {
+        @Override
+        public void onRemoteOperation(SyncOperation op) {
+            mainHandler.post(() -> {
+                boolean changed = op.kind == SyncOperation.Kind.ADD
+                        ? applyRemoteAdd(op.toPoi()) : applyRemoteRemove(op.poiId);
+                if (changed) notifyPoisChanged();
+            });
+        }
+
+        @Override
+        public void onConflict(SyncOperation op) {
+            // Someone else changed the point first; the bin has the state that won
+            mainHandler.post(() -> fetchAndUpdateMap());
+        }
+    }
+
+    // Applies the bin's pushed changes as they arrive, and polls as usual while the stream is down
+    private class EventListener implements PoiEventStream.Listener {
+        @Override
+        public void onChanges(List<PoiEventStream.Change> changes) {
+            boolean changed = false;
+            for (PoiEventStream.Change change : changes) {
+                changed |= change.removed ? applyRemoteRemove(change.poi.id) : applyRemoteAdd(change.poi);
+            }
+            if (changed) notifyPoisChanged();
+        }
+
+        @Override
+        public void onMissedEvents() {
+            fetchAndUpdateMap();
+        }
+
+        @Override
+        public void onConnectionChanged(boolean connected) {
+            Log.d(TAG, "Event stream " + (connected ? "connected" : "disconnected"));
+            pollScheduler.reschedule();
+        }
+    }
+
+    // Adds or updates a point another client wrote; returns whether the store changed
+    private boolean applyRemoteAdd(PointOfInterest poi) {
+        PointOfInterest current = poiStore.get(poi.id);
+        if (poi.equals(current)) return false;
+        return poiStore.update(poi) || poiStore.add(poi);
+    }
+
+    private boolean applyRemoteRemove(String id) {
+        PointOfInterest poi = poiStore.get(id);
+        if (poi == null) return false;
+        if (isDestination(poi)) clearRoute();
+        return poiStore.remove(poi);
+    }
+
+    // Poll often while a route is shown with hazards around, rarely otherwise or while pushed to
+    private long pollIntervalMillis() {
+        if (route == null || (eventStream != null && eventStream.isConnected())) return IDLE_POLL_MILLIS;
+        boolean hazardsNearby = !poiStore.getWithinRadius("hazard", currentCoords, NEAR_HAZARD_METERS).isEmpty();
+        return hazardsNearby ? ACTIVE_POLL_MILLIS : IDLE_POLL_MILLIS;
+    }
+
+    private void notifyPoisChanged() {
+        if (observer != null) observer.onPoisChanged();
+    }
+
+    private void dispose() {
+        observer = null;
+        routeCache.dispose();
+        routeScorer.dispose();
+        routeMonitor.dispose();
+        routeWorker.shutdownNow();
+        if (telemetryServer != null) telemetryServer.stop();
+        if (eventStream != null) eventStream.stop();
+        locationTracker.dispose();
+        proximityAlerter.dispose();
+        expiryEngine.dispose();
+        offlineStore.dispose();
+        pollScheduler.pause();
+        // The store itself is process wide; a new repository adds its own origin
+        poiStore.remove(originPoint);
+    }
+}
@@ -0,0 +1,154 @@
+package com.here.routing;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory POI store with a spatial grid plus secondary indexes by id and by type, so
+ * lookups no longer scan every point. Points are immutable; an update replaces the stored
+ * value with the same id. Safe to use from any thread.
+ */
+public class PoiStore {
+    // ~550 m of latitude per cell: a few cells cover a route corridor or the visible map
+    private static final double CELL_SIZE_DEGREES = 0.005;
+
+    private final Map<String, PointOfInterest> byId = new LinkedHashMap<>();
+    private final Map<String, Map<String, PointOfInterest>> byType = new HashMap<>();
+    private final SpatialGrid<PointOfInterest> grid = new SpatialGrid<>(CELL_SIZE_DEGREES);
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Notified after each mutation, on the thread that made it and outside the store lock. */
+    public interface ChangeListener {
+        void onPoiAdded(PointOfInterest poi);
+        void onPoiRemoved(PointOfInterest poi);
+        // A new value replaced the point with the same id
+        void onPoiUpdated(PointOfInterest previous, PointOfInterest poi);
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Adds the point unless one with the same id is already stored. */
+    public boolean add(PointOfInterest poi) {
+        synchronized (this) {
+            if (byId.containsKey(poi.id)) return false;
+            index(poi);
+        }
+        for (ChangeListener listener : listeners) listener.onPoiAdded(poi);
+        return true;
+    }
+
+    /** Replaces the stored point with the same id. */
+    public boolean update(PointOfInterest poi) {
+        PointOfInterest previous;
+        synchronized (this) {
+            previous = byId.get(poi.id);
+            if (previous == null) return false;
+            unindex(previous);
+            index(poi);
+        }
+        for (ChangeListener listener : listeners) listener.onPoiUpdated(previous, poi);
+        return true;
+    }
+
+    public boolean remove(PointOfInterest poi) {
+        PointOfInterest removed;
+        synchronized (this) {
+            removed = byId.get(poi.id);
+            if (removed == null) return false;
+            unindex(removed);
+        }
+        for (ChangeListener listener : listeners) listener.onPoiRemoved(removed);
+        return true;
+    }
+
+    public synchronized PointOfInterest get(String id) {
+        return byId.get(id);
+    }
+
+    public synchronized List<PointOfInterest> getAll() {
+        return new ArrayList<>(byId.values());
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public synchronized List<PointOfInterest> getType(String type) {
+        Map<String, PointOfInterest> ofType = byType.get(type);
+        if (ofType == null) return new ArrayList<>();
+        return new ArrayList<>(ofType.values());
+    }
+
+    public synchronized List<PointOfInterest> getTypeExcluding(String type, PointOfInterest excluded) {
+        Map<String, PointOfInterest> ofType = byType.get(type);
+        if (ofType == null) return new ArrayList<>();
+
+        List<PointOfInterest> result = new ArrayList<>(ofType.size());
+        for (PointOfInterest poi : ofType.values()) {
+            if (excluded == null || !poi.id.equals(excluded.id)) result.add(poi);
+        }
+        return result;
+    }
+
+    /** POIs of the given type inside the box, or of any type when {@code type} is null. */
+    public synchronized List<PointOfInterest> getInBox(String type, GeoBox box) {
+        List<PointOfInterest> candidates = new ArrayList<>();
+        grid.queryCells(box.southWestCorner.latitude, box.southWestCorner.longitude,
+                box.northEastCorner.latitude, box.northEastCorner.longitude, candidates);
+
+        List<PointOfInterest> result = new ArrayList<>();
+        for (PointOfInterest poi : candidates) {
+            if (type != null && !type.equals(poi.type)) continue;
+            if (contains(box, poi.coordinates)) result.add(poi);
+        }
+        return result;
+    }
+
+    /** POIs of the given type within {@code radiusMeters} of the center, or of any type when {@code type} is null. */
+    public synchronized List<PointOfInterest> getWithinRadius(String type, GeoCoordinates center, double radiusMeters) {
+        List<PointOfInterest> result = new ArrayList<>();
+        for (PointOfInterest poi : getInBox(type, GeoMath.boxAround(center, radiusMeters))) {
+            if (GeoMath.distanceMeters(center, poi.coordinates) <= radiusMeters) result.add(poi);
+        }
+        return result;
+    }
+
+    public static boolean contains(GeoBox box, GeoCoordinates c) {
+        return c.latitude >= box.southWestCorner.latitude && c.latitude <= box.northEastCorner.latitude
+                && c.longitude >= box.southWestCorner.longitude && c.longitude <= box.northEastCorner.longitude;
+    }
+
+    private void index(PointOfInterest poi) {
+        byId.put(poi.id, poi);
+        Map<String, PointOfInterest> ofType = byType.get(poi.type);
+        if (ofType == null) {
+            ofType = new LinkedHashMap<>();
+            byType.put(poi.type, ofType);
+        }
+        ofType.put(poi.id, poi);
+        grid.insert(poi, poi.coordinates.latitude, poi.coordinates.longitude);
+    }
+
+    private void unindex(PointOfInterest poi) {
+        byId.remove(poi.id);
+        Map<String, PointOfInterest> ofType = byType.get(poi.type);
+        if (ofType != null) {
+            ofType.remove(poi.id);
+            if (ofType.isEmpty()) byType.remove(poi.type);
+        }
+        grid.remove(poi, poi.coordinates.latitude, poi.coordinates.longitude);
+    }
+}
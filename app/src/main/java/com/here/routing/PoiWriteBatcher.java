@@ -0,0 +1,163 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for POI mutations. Operations submitted within a short window, or until
+ * the batch size is reached, are coalesced and handed to the {@link Sink} as one write.
+ */
+public class PoiWriteBatcher {
+    private static final String TAG = PoiWriteBatcher.class.getSimpleName();
+
+    public interface Sink {
+        // Applies the whole batch in one round trip; throwing fails every operation in it
+        void write(List<SyncOperation> operations) throws Exception;
+    }
+
+    public interface Callback {
+        // Called on the writer thread; error is null on success
+        void onComplete(SyncOperation op, String error);
+    }
+
+    public static class FlushPolicy {
+        public final long maxDelayMillis;
+        public final int maxBatchSize;
+        public final int capacity;
+
+        public FlushPolicy(long maxDelayMillis, int maxBatchSize, int capacity) {
+            this.maxDelayMillis = maxDelayMillis;
+            this.maxBatchSize = maxBatchSize;
+            this.capacity = capacity;
+        }
+    }
+
+    public static final FlushPolicy DEFAULT_POLICY = new FlushPolicy(500, 50, 500);
+
+    private static class Entry {
+        final SyncOperation op;
+        final Callback callback;
+
+        Entry(SyncOperation op, Callback callback) {
+            this.op = op;
+            this.callback = callback;
+        }
+    }
+
+    private final Sink sink;
+    private final ScheduledExecutorService executor;
+    private final FlushPolicy policy;
+    private final List<Entry> queue = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public PoiWriteBatcher(Sink sink, ScheduledExecutorService executor, FlushPolicy policy) {
+        this.sink = sink;
+        this.executor = executor;
+        this.policy = policy;
+    }
+
+    /**
+     * Queues an operation. Returns false without queueing when the queue is at capacity, so
+     * callers can back off instead of growing memory while the backend is slow or offline.
+     */
+    public boolean submit(SyncOperation op, Callback callback) {
+        synchronized (queue) {
+            if (queue.size() >= policy.capacity) {
+                Log.w(TAG, "Write queue full, rejecting " + op);
+                return false;
+            }
+            queue.add(new Entry(op, callback));
+
+            if (queue.size() >= policy.maxBatchSize) {
+                cancelScheduledFlush();
+                executor.execute(this::flush);
+            } else if (scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::flush, policy.maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    public int getQueuedCount() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /** Writes everything queued so far. Runs on the executor. */
+    public void flush() {
+        List<Entry> batch;
+        synchronized (queue) {
+            cancelScheduledFlush();
+            if (queue.isEmpty()) return;
+            int count = Math.min(queue.size(), policy.maxBatchSize);
+            batch = new ArrayList<>(queue.subList(0, count));
+            queue.subList(0, count).clear();
+            // Whatever did not fit goes out in the next window
+            if (!queue.isEmpty()) executor.execute(this::flush);
+        }
+
+        List<Entry> coalesced = coalesce(batch);
+        List<SyncOperation> operations = new ArrayList<>(coalesced.size());
+        for (Entry entry : coalesced) operations.add(entry.op);
+
+        String error = null;
+        if (!operations.isEmpty()) {
+            try {
+                sink.write(operations);
+            } catch (Exception e) {
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+                Log.e(TAG, "Batched write of " + operations.size() + " operations failed: " + error);
+            }
+        }
+
+        // Operations cancelled out by coalescing are reported with the outcome of the batch
+        for (Entry entry : batch) {
+            if (entry.callback != null) entry.callback.onComplete(entry.op, error);
+        }
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    // Keeps only the last operation on each POI. A point added and removed again within the batch
+    // never reached the backend, so neither is sent; a point that existed before is still removed,
+    // and re-added after that if the last operation is an add.
+    private static List<Entry> coalesce(List<Entry> batch) {
+        Map<String, List<Entry>> byPoi = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            List<Entry> entries = byPoi.get(entry.op.poiId);
+            if (entries == null) byPoi.put(entry.op.poiId, entries = new ArrayList<>());
+            entries.add(entry);
+        }
+
+        List<Entry> result = new ArrayList<>(batch.size());
+        for (List<Entry> entries : byPoi.values()) {
+            Entry first = entries.get(0);
+            Entry last = entries.get(entries.size() - 1);
+            boolean createdHere = first.op.kind == SyncOperation.Kind.ADD && first.op.createsPoi;
+            if (last.op.kind == SyncOperation.Kind.REMOVE) {
+                if (!createdHere) result.add(last);
+                continue;
+            }
+            if (!createdHere) {
+                Entry lastRemove = null;
+                for (Entry entry : entries) if (entry.op.kind == SyncOperation.Kind.REMOVE) lastRemove = entry;
+                if (lastRemove != null) result.add(lastRemove);
+            }
+            result.add(last);
+        }
+        return result;
+    }
+}
@@ -1,70 +1,70 @@
 package com.here.routing;
 
 import android.annotation.SuppressLint;
-import android.content.Context;
-import android.util.Log;
 
 import com.here.sdk.core.GeoBox;
 import com.here.sdk.core.GeoCoordinates;
-import com.here.sdk.core.Metadata;
-import com.here.sdk.mapviewlite.MapImage;
-import com.here.sdk.mapviewlite.MapImageFactory;
-import com.here.sdk.mapviewlite.MapMarker;
-import com.here.sdk.mapviewlite.MapMarkerImageStyle;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Immutable POI value. Holds no map objects and has no side effects, so points can be parsed,
+ * indexed and filtered on any thread; markers are created by {@link MarkerReconciler}.
+ */
+public final class PointOfInterest {
+    public final String id, type, title, description;
+    public final GeoCoordinates coordinates;
+    public final boolean userSubmitted;
+    // How often drones reported this point and when they last did (epoch millis, 0 if unknown)
+    public final int hits;
+    public final long lastSeen;
+
+    private static final PoiStore store = new PoiStore();
+    // Types that come from the shared bin, as opposed to local origin/touch points
+    private static final String[] REMOTE_TYPES = {"hazard", "people"};
 
-public class PointOfInterest {
-    public String type, title, description;
-    public GeoCoordinates coordinates;
-    public MapMarker marker;
-    public static PointOfInterest lastTouchPoint;
-    public boolean userSubmitted;
+    public PointOfInterest(String type, String title, String description, GeoCoordinates coordinates, boolean userSubmitted) {
+        this(UUID.randomUUID().toString(), type, title, description, coordinates, userSubmitted);
+    }
 
-    private static List<PointOfInterest> all = new ArrayList<>();
+    public PointOfInterest(String id, String type, String title, String description, GeoCoordinates coordinates, boolean userSubmitted) {
+        this(id, type, title, description, coordinates, userSubmitted, 1, 0);
+    }
 
-    public PointOfInterest(String type, String title, String description, GeoCoordinates coordinates, boolean userSubmitted) {
+    public PointOfInterest(String id, String type, String title, String description, GeoCoordinates coordinates,
+                           boolean userSubmitted, int hits, long lastSeen) {
+        this.id = id;
         this.type = type;
         this.title = title;
         this.description = description;
-        this.coordinates = coordinates;
+        // GeoCoordinates is mutable, so keep a private copy
+        this.coordinates = new GeoCoordinates(coordinates.latitude, coordinates.longitude);
         this.userSubmitted = userSubmitted;
+        this.hits = hits;
+        this.lastSeen = lastSeen;
+    }
 
-        int markerImage = 0;
-        switch (type) {
-            case "origin":
-                markerImage = R.drawable.blue_dot;
-                break;
-            case "hazard":
-                markerImage = R.drawable.hazard_icon;
-                break;
-            case "touchPoint":
-                markerImage = R.drawable.green_dot;
-                lastTouchPoint = this;
-                break;
-            case "people":
-                markerImage = R.drawable.person_icon;
-                break;
-        }
-
-        marker = new MapMarker(coordinates);
-        marker.addImage(MapImageFactory.fromResource(RoutingExample.context.getResources(), markerImage), new MapMarkerImageStyle());
-
-        Metadata metadata = new Metadata();
-        metadata.setString("title", title + (userSubmitted?" (User)":" (Drone)"));
-        metadata.setString("description", "Description: " + ((description.isEmpty())?"N/A":description));
-        marker.setMetadata(metadata);
-
-        Log.d("POI", this.toString());
-        all.add(this);
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PointOfInterest)) return false;
+        PointOfInterest other = (PointOfInterest) o;
+        return userSubmitted == other.userSubmitted && hits == other.hits && lastSeen == other.lastSeen
+                && Objects.equals(id, other.id) && Objects.equals(type, other.type)
+                && Objects.equals(title, other.title) && Objects.equals(description, other.description)
+                && coordinates.latitude == other.coordinates.latitude
+                && coordinates.longitude == other.coordinates.longitude;
     }
 
-    public void remove() {
-        all.remove(this);
-        //if (Objects.equals(type, "touchPoint")) lastTouchPoint = null;
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, type, title, description, coordinates.latitude, coordinates.longitude, userSubmitted, hits, lastSeen);
     }
 
     @SuppressLint("DefaultLocale")
@@ -72,50 +72,62 @@ public class PointOfInterest {
         return String.format("Type: %s, Title: %s, Desc: %s, Lat: %.4f, Long: %.4f", type, title, description, coordinates.latitude, coordinates.longitude);
     }
 
-    public static List<PointOfInterest> getAll() { return all; }
+    public static PoiStore getStore() { return store; }
 
-    public static List<PointOfInterest> getType(String type) {
-        List<PointOfInterest> result = new ArrayList<>();
-        for (PointOfInterest poi: all) {
-            if (Objects.equals(poi.type, type)) result.add(poi);
-        }
-        return result;
+    /** Whether points of this type live in the shared bin rather than only on this device. */
+    public static boolean isShared(String type) {
+        for (String remoteType : REMOTE_TYPES) if (remoteType.equals(type)) return true;
+        return false;
     }
 
-    public static List<PointOfInterest> getTypeExcluding(String type, MapMarker marker) {
-        List<PointOfInterest> result = new ArrayList<>();
-        for (PointOfInterest poi: all) {
-            if (Objects.equals(poi.type, type) && marker!=poi.marker) result.add(poi);
+    public static List<PointOfInterest> getAll() { return store.getAll(); }
+
+    /**
+     * Folds a freshly fetched feed into the store. Unchanged points are left alone, edited
+     * ones replace their previous version, and feed points that disappeared from the bin are
+     * dropped, so only real changes reach the map. Points in {@code pendingIds} have local
+     * writes the bin has not seen yet, so the feed is not authoritative for them and they are
+     * left as they are.
+     */
+    public static void mergeFetched(List<PointOfInterest> fetched, Set<String> pendingIds) {
+        Map<String, PointOfInterest> existing = new HashMap<>();
+        for (String type : REMOTE_TYPES) {
+            for (PointOfInterest poi : store.getType(type)) {
+                if (!pendingIds.contains(poi.id)) existing.put(poi.id, poi);
+            }
+        }
+
+        for (PointOfInterest poi : fetched) {
+            if (pendingIds.contains(poi.id)) continue;
+            PointOfInterest current = existing.remove(poi.id);
+            if (current == null) store.add(poi);
+            else if (!current.equals(poi)) store.update(poi);
         }
-        return result;
+
+        for (PointOfInterest gone : existing.values()) store.remove(gone);
     }
 
-    public static List<GeoBox> getGeoBoxes(double radiusMeters, MapMarker marker) {
-        List<GeoBox> geoBoxes = new ArrayList<>();
-        for (PointOfInterest center : getTypeExcluding("hazard", marker)) {
-            // Convert radius in meters to degrees (approximation)
-            double deltaLat = radiusMeters / 111320.0; // Approximate meters per degree latitude
-            double deltaLon = radiusMeters / (111320.0 * Math.cos(Math.toRadians(center.coordinates.latitude))); // Adjust for longitude
+    public static List<PointOfInterest> getType(String type) {
+        return store.getType(type);
+    }
 
-            // Define GeoBox using SW and NE corners
-            GeoCoordinates southWest = new GeoCoordinates(center.coordinates.latitude - deltaLat, center.coordinates.longitude - deltaLon);
-            GeoCoordinates northEast = new GeoCoordinates(center.coordinates.latitude + deltaLat, center.coordinates.longitude + deltaLon);
+    public static List<PointOfInterest> getTypeExcluding(String type, PointOfInterest excluded) {
+        return store.getTypeExcluding(type, excluded);
+    }
 
-            geoBoxes.add(new GeoBox(southWest, northEast));
-        }
-        return geoBoxes;
+    public static List<PointOfInterest> getTypeInBox(String type, GeoBox box) {
+        return store.getInBox(type, box);
     }
 
-    public static List<MapMarker> getMapMarkers() {
-        List<MapMarker> markers = new ArrayList<>();
-        for (PointOfInterest poi : all) {
-            markers.add(poi.marker);
-        }
-        return markers;
+    public static List<PointOfInterest> getTypeWithinRadius(String type, GeoCoordinates center, double radiusMeters) {
+        return store.getWithinRadius(type, center, radiusMeters);
     }
 
-    public static PointOfInterest getFromMarker(MapMarker marker) {
-        for (PointOfInterest poi: all) if (poi.marker==marker) return poi;
-        return null;
+    public static List<GeoBox> getGeoBoxes(double radiusMeters, PointOfInterest excluded) {
+        List<GeoBox> geoBoxes = new ArrayList<>();
+        for (PointOfInterest center : getTypeExcluding("hazard", excluded)) {
+            geoBoxes.add(GeoMath.boxAround(center.coordinates, radiusMeters));
+        }
+        return geoBoxes;
     }
 }
@@ -4,6 +4,8 @@ import com.google.gson.*;
 import com.here.sdk.core.GeoCoordinates;
 
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
 
 public class PointOfInterestDeserializer implements JsonDeserializer<PointOfInterest> {
     @Override
@@ -14,8 +16,21 @@ public class PointOfInterestDeserializer implements JsonDeserializer<PointOfInte
         String title = obj.get("title").getAsString();
         String description = obj.get("description").getAsString();
         GeoCoordinates coordinates = context.deserialize(obj.get("coordinates"), GeoCoordinates.class);
+        String id = idOf(obj);
         boolean userSubmitted = obj.get("userSubmitted").getAsBoolean();
+        // Only set on drone reports merged by the ingestion service
+        int hits = obj.has("hits") ? obj.get("hits").getAsInt() : 1;
+        long lastSeen = obj.has("lastSeen") ? obj.get("lastSeen").getAsLong() : 0;
 
-        return new PointOfInterest(type, title, description, coordinates, userSubmitted);
+        return new PointOfInterest(id, type, title, description, coordinates, userSubmitted, hits, lastSeen);
+    }
+
+    /** Id of a raw feed entry. Older entries predate ids, so one is derived from their content that is the same on every fetch. */
+    public static String idOf(JsonObject obj) {
+        if (obj.has("id")) return obj.get("id").getAsString();
+        JsonObject coordinates = obj.getAsJsonObject("coordinates");
+        String key = obj.get("type").getAsString() + "|" + obj.get("title").getAsString()
+                + "|" + coordinates.get("latitude").getAsDouble() + "|" + coordinates.get("longitude").getAsDouble();
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
     }
 }
@@ -0,0 +1,119 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.core.GeoPolyline;
+import com.here.sdk.core.errors.InstantiationErrorException;
+import com.here.sdk.mapviewlite.MapPolyline;
+import com.here.sdk.mapviewlite.MapPolylineStyle;
+import com.here.sdk.mapviewlite.PixelFormat;
+import com.here.sdk.routing.Maneuver;
+import com.here.sdk.routing.Route;
+import com.here.sdk.routing.Section;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Everything the map needs to show a route, computed off the UI thread by {@link #prepare}:
+ * the display geometry, simplified so long routes draw fewer vertices, its style and the
+ * details text. Map items belong to the UI thread, so the polyline itself is only created
+ * there by {@link #createMapPolyline}, which is then cheap.
+ */
+public final class PreparedRoute {
+    private static final String TAG = PreparedRoute.class.getSimpleName();
+    // Vertices closer than this to the simplified line are dropped from the display polyline
+    private static final double DISPLAY_TOLERANCE_METERS = 1;
+
+    public final Route route;
+    public final String details;
+    private final GeoPolyline geometry;
+    private final MapPolylineStyle style;
+
+    private PreparedRoute(Route route, GeoPolyline geometry, MapPolylineStyle style, String details) {
+        this.route = route;
+        this.geometry = geometry;
+        this.style = style;
+        this.details = details;
+    }
+
+    /** A new polyline for the map; call on the UI thread. */
+    public MapPolyline createMapPolyline() {
+        return new MapPolyline(geometry, style);
+    }
+
+    /** Does the per-route work of showing a route; safe to call from any thread. */
+    public static PreparedRoute prepare(Route route) {
+        GeoPolyline geometry = route.getGeometry();
+        List<GeoCoordinates> simplified = simplify(geometry.vertices, DISPLAY_TOLERANCE_METERS);
+        GeoPolyline display = geometry;
+        try {
+            display = new GeoPolyline(simplified);
+        } catch (InstantiationErrorException e) {
+            Log.e(TAG, "Could not simplify route geometry: " + e.error.name());
+        }
+        MapPolylineStyle style = new MapPolylineStyle();
+        style.setColor(0x002DFFBF, PixelFormat.RGBA_8888);
+        style.setWidthInPixels(10);
+
+        List<Maneuver> maneuvers = new ArrayList<>();
+        for (Section section : route.getSections()) maneuvers.addAll(section.getManeuvers());
+        // One log line for the whole route rather than one per maneuver
+        StringBuilder log = new StringBuilder("Maneuvers of route with ").append(maneuvers.size()).append(" steps:");
+        for (Maneuver maneuver : maneuvers) {
+            GeoCoordinates location = maneuver.getCoordinates();
+            log.append('\n').append(maneuver.getText())
+                    .append(", Action: ").append(maneuver.getAction().name())
+                    .append(", Location: ").append(location.latitude).append(", ").append(location.longitude);
+        }
+        Log.d(TAG, log.toString());
+        Log.d(TAG, "Display polyline has " + simplified.size() + " of " + geometry.vertices.size() + " vertices");
+
+        String details = "Time: " + formatTime(route.getDuration().getSeconds()) + " minutes "
+                + "\nDistance: " + route.getLengthInMeters() + " metres";
+        return new PreparedRoute(route, display, style, details);
+    }
+
+    private static String formatTime(long sec) {
+        long minutes = (sec % 3600) / 60;
+        sec %= 60;
+        return String.format(Locale.getDefault(), "%d:%02d", minutes, sec);
+    }
+
+    // Douglas-Peucker, with an explicit stack so very long routes cannot overflow the call stack
+    static List<GeoCoordinates> simplify(List<GeoCoordinates> vertices, double toleranceMeters) {
+        int n = vertices.size();
+        if (n < 3) return vertices;
+        boolean[] keep = new boolean[n];
+        keep[0] = keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top], first = stack[--top];
+            GeoCoordinates a = vertices.get(first), b = vertices.get(last);
+            double farthest = toleranceMeters;
+            int split = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = GeoMath.distanceToSegmentMeters(vertices.get(i), a, b);
+                if (distance > farthest) {
+                    farthest = distance;
+                    split = i;
+                }
+            }
+            if (split < 0) continue;
+            keep[split] = true;
+            stack[top++] = first;
+            stack[top++] = split;
+            stack[top++] = split;
+            stack[top++] = last;
+        }
+
+        List<GeoCoordinates> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) if (keep[i]) result.add(vertices.get(i));
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Geofences around hazards. Each position update looks up the hazards around the user in the
+ * {@link PoiStore}'s spatial grid, so the cost depends on how many hazards are nearby rather
+ * than how many exist. A hazard is entered when the user comes within the enter radius and
+ * only exited once they are beyond the larger exit radius, so GPS jitter at the edge does not
+ * alert repeatedly. Alerts go to the {@link Listener} on a background thread of their own;
+ * nothing here touches the map.
+ */
+public class ProximityAlerter {
+    private static final String TAG = ProximityAlerter.class.getSimpleName();
+
+    public interface Listener {
+        // Both are called on the alerter thread
+        void onEnter(PointOfInterest hazard, double distanceMeters);
+        void onExit(PointOfInterest hazard);
+    }
+
+    private final PoiStore store;
+    private final double enterMeters, exitMeters;
+    private final Listener listener;
+    private final ExecutorService alerts = Executors.newSingleThreadExecutor();
+
+    // Guarded by this; hazard id -> hazard as it was when entered
+    private final Map<String, PointOfInterest> inside = new HashMap<>();
+
+    public ProximityAlerter(PoiStore store, double enterMeters, double exitMeters, Listener listener) {
+        if (exitMeters < enterMeters) throw new IllegalArgumentException("exit radius smaller than enter radius");
+        this.store = store;
+        this.enterMeters = enterMeters;
+        this.exitMeters = exitMeters;
+        this.listener = listener;
+    }
+
+    /** Checks a filtered position; safe to call from any thread. */
+    public void onPosition(GeoCoordinates position) {
+        List<PointOfInterest> nearby = store.getWithinRadius("hazard", position, exitMeters);
+        List<PointOfInterest> entered = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        List<PointOfInterest> exited = new ArrayList<>();
+        synchronized (this) {
+            Set<String> stillInside = new HashSet<>();
+            for (PointOfInterest hazard : nearby) {
+                if (inside.containsKey(hazard.id)) {
+                    stillInside.add(hazard.id);
+                    continue;
+                }
+                double distance = GeoMath.distanceMeters(position, hazard.coordinates);
+                if (distance > enterMeters) continue;
+                inside.put(hazard.id, hazard);
+                stillInside.add(hazard.id);
+                entered.add(hazard);
+                distances.add(distance);
+            }
+            // Beyond the exit radius, moved away or removed from the store
+            if (stillInside.size() < inside.size()) {
+                for (Map.Entry<String, PointOfInterest> entry : new ArrayList<>(inside.entrySet())) {
+                    if (stillInside.contains(entry.getKey())) continue;
+                    inside.remove(entry.getKey());
+                    exited.add(entry.getValue());
+                }
+            }
+        }
+        if (entered.isEmpty() && exited.isEmpty()) return;
+
+        try {
+            alerts.execute(() -> {
+                for (PointOfInterest hazard : exited) listener.onExit(hazard);
+                for (int i = 0; i < entered.size(); i++) listener.onEnter(entered.get(i), distances.get(i));
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Alerter disposed, dropping alerts");
+        }
+    }
+
+    public synchronized int insideCount() {
+        return inside.size();
+    }
+
+    public synchronized void reset() {
+        inside.clear();
+    }
+
+    public void dispose() {
+        alerts.shutdownNow();
+    }
+}
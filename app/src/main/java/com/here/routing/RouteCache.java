@@ -0,0 +1,135 @@
+package com.here.routing;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.Route;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of calculated routes. Keys combine the origin and destination snapped to a
+ * ~50 m grid with a signature of the avoidance areas sent for the request, so a route is
+ * reused only while the hazards that shaped it are unchanged. Entries whose corridor
+ * contains a hazard that is added, moved or resolved are evicted straight away.
+ */
+public class RouteCache implements PoiStore.ChangeListener {
+    private static final String TAG = RouteCache.class.getSimpleName();
+    private static final double SNAP_DEGREES = 0.0005;
+    // Hazards this close to a route's bounding box count as inside its corridor
+    private static final double CORRIDOR_METERS = 50;
+
+    private static class CachedRoute {
+        final Route route;
+        final GeoBox corridor;
+
+        CachedRoute(Route route, GeoBox corridor) {
+            this.route = route;
+            this.corridor = corridor;
+        }
+    }
+
+    private final PoiStore store;
+    private final Map<String, CachedRoute> entries;
+    private int hits, misses, invalidations;
+
+    public RouteCache(PoiStore store, int capacity) {
+        this.store = store;
+        this.entries = new LinkedHashMap<String, CachedRoute>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRoute> eldest) {
+                return size() > capacity;
+            }
+        };
+        store.addListener(this);
+    }
+
+    public static String key(GeoCoordinates origin, GeoCoordinates destination, List<GeoBox> avoidAreas) {
+        long signature = 17;
+        for (GeoBox box : avoidAreas) {
+            signature = 31 * signature + Double.doubleToLongBits(box.southWestCorner.latitude);
+            signature = 31 * signature + Double.doubleToLongBits(box.southWestCorner.longitude);
+            signature = 31 * signature + Double.doubleToLongBits(box.northEastCorner.latitude);
+            signature = 31 * signature + Double.doubleToLongBits(box.northEastCorner.longitude);
+        }
+        return snap(origin) + ">" + snap(destination) + "#" + avoidAreas.size() + ":" + Long.toHexString(signature);
+    }
+
+    public synchronized Route get(String key) {
+        CachedRoute entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.route;
+    }
+
+    public synchronized void put(String key, Route route) {
+        GeoBox bounds = route.getBoundingBox();
+        double latPad = GeoMath.metersToLatDegrees(CORRIDOR_METERS);
+        double lonPad = GeoMath.metersToLonDegrees(CORRIDOR_METERS, bounds.southWestCorner.latitude);
+        GeoBox corridor = new GeoBox(
+                new GeoCoordinates(bounds.southWestCorner.latitude - latPad, bounds.southWestCorner.longitude - lonPad),
+                new GeoCoordinates(bounds.northEastCorner.latitude + latPad, bounds.northEastCorner.longitude + lonPad));
+        entries.put(key, new CachedRoute(route, corridor));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @SuppressLint("DefaultLocale")
+    public synchronized String getStats() {
+        int lookups = hits + misses;
+        return String.format("%d routes cached, %d hits / %d lookups (%.1f%%), %d invalidated",
+                entries.size(), hits, lookups, lookups == 0 ? 0 : 100.0 * hits / lookups, invalidations);
+    }
+
+    public void dispose() {
+        store.removeListener(this);
+    }
+
+    @Override
+    public void onPoiAdded(PointOfInterest poi) {
+        invalidateAround(poi);
+    }
+
+    @Override
+    public void onPoiRemoved(PointOfInterest poi) {
+        invalidateAround(poi);
+    }
+
+    @Override
+    public void onPoiUpdated(PointOfInterest previous, PointOfInterest poi) {
+        invalidateAround(previous);
+        invalidateAround(poi);
+    }
+
+    private synchronized void invalidateAround(PointOfInterest poi) {
+        if (!"hazard".equals(poi.type)) return;
+
+        List<String> stale = new ArrayList<>();
+        for (Iterator<Map.Entry<String, CachedRoute>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, CachedRoute> entry = it.next();
+            if (PoiStore.contains(entry.getValue().corridor, poi.coordinates)) {
+                stale.add(entry.getKey());
+                it.remove();
+            }
+        }
+        if (!stale.isEmpty()) {
+            invalidations += stale.size();
+            Log.d(TAG, "Hazard " + poi.id + " invalidated " + stale.size() + " cached routes");
+        }
+    }
+
+    private static String snap(GeoCoordinates c) {
+        return Math.round(c.latitude / SNAP_DEGREES) + ":" + Math.round(c.longitude / SNAP_DEGREES);
+    }
+}
@@ -0,0 +1,168 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.Route;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ranks candidate routes by how close they pass to known hazards. Each candidate's geometry
+ * is checked against the hazards in its padded bounding box; a hazard adds exposure that
+ * grows as the route gets closer and with how often it was reported. Candidates are scored in
+ * parallel on a worker pool and the pick is delivered on that pool: the fastest route
+ * that keeps clear of every hazard, or failing that the one with the lowest combined cost of
+ * travel time and exposure.
+ */
+public class RouteScorer {
+    private static final String TAG = RouteScorer.class.getSimpleName();
+    // Hazards further than this from the route do not count
+    private static final double INFLUENCE_METERS = 150;
+    // A route that passes no hazard closer than this is considered safe
+    private static final double SAFE_METERS = 50;
+    // Travel time one unit of exposure (a single report right on the route) is worth
+    private static final double SECONDS_PER_EXPOSURE = 600;
+
+    public static class Score {
+        public final Route route;
+        public final long durationSeconds;
+        public final double exposure;
+        public final double closestMeters;
+        public final int hazardsNearby;
+
+        Score(Route route, long durationSeconds, double exposure, double closestMeters, int hazardsNearby) {
+            this.route = route;
+            this.durationSeconds = durationSeconds;
+            this.exposure = exposure;
+            this.closestMeters = closestMeters;
+            this.hazardsNearby = hazardsNearby;
+        }
+
+        public boolean isSafe() {
+            return closestMeters >= SAFE_METERS;
+        }
+
+        public double cost() {
+            return durationSeconds + exposure * SECONDS_PER_EXPOSURE;
+        }
+
+        @Override
+        public String toString() {
+            String result = "duration=" + durationSeconds + "s hazards=" + hazardsNearby;
+            if (hazardsNearby == 0) return result;
+            return result + " closest=" + Math.round(closestMeters) + "m exposure=" + Math.round(exposure * 100) / 100.0;
+        }
+    }
+
+    public interface Callback {
+        // Called on a worker thread, so the caller can keep preparing the route off the UI thread
+        void onBestRoute(Score best);
+    }
+
+    private final PoiStore store;
+    private final ExecutorService pool =
+            Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    public RouteScorer(PoiStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Scores every candidate on the pool and reports the best one. The hazard at
+     * {@code excluded} (the destination, if it is one) is not held against any route.
+     */
+    public void pickBest(List<Route> routes, PointOfInterest excluded, Callback callback) {
+        Score[] scores = new Score[routes.size()];
+        AtomicInteger remaining = new AtomicInteger(routes.size());
+        for (int i = 0; i < routes.size(); i++) {
+            int index = i;
+            Runnable task = () -> {
+                scores[index] = score(routes.get(index), excluded);
+                // The last candidate to finish makes the pick
+                if (remaining.decrementAndGet() == 0) {
+                    callback.onBestRoute(best(Arrays.asList(scores)));
+                }
+            };
+            try {
+                pool.execute(task);
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Scorer disposed, dropping candidates");
+                return;
+            }
+        }
+    }
+
+    public Score score(Route route, PointOfInterest excluded) {
+        List<GeoCoordinates> vertices = route.getGeometry().vertices;
+        long durationSeconds = route.getDuration().getSeconds();
+        if (vertices.isEmpty()) return new Score(route, durationSeconds, 0, Double.MAX_VALUE, 0);
+
+        double south = 90, west = 180, north = -90, east = -180;
+        for (GeoCoordinates vertex : vertices) {
+            south = Math.min(south, vertex.latitude);
+            north = Math.max(north, vertex.latitude);
+            west = Math.min(west, vertex.longitude);
+            east = Math.max(east, vertex.longitude);
+        }
+        double latPad = GeoMath.metersToLatDegrees(INFLUENCE_METERS);
+        double lonPad = GeoMath.metersToLonDegrees(INFLUENCE_METERS, (south + north) / 2);
+        GeoBox box = new GeoBox(new GeoCoordinates(south - latPad, west - lonPad),
+                new GeoCoordinates(north + latPad, east + lonPad));
+
+        double exposure = 0;
+        double closest = Double.MAX_VALUE;
+        int nearby = 0;
+        for (PointOfInterest hazard : store.getInBox("hazard", box)) {
+            if (excluded != null && hazard.id.equals(excluded.id)) continue;
+            double distance = distanceToRoute(hazard.coordinates, vertices, latPad, lonPad);
+            if (distance >= INFLUENCE_METERS) continue;
+            nearby++;
+            closest = Math.min(closest, distance);
+            exposure += (1 - distance / INFLUENCE_METERS) * severity(hazard);
+        }
+        return new Score(route, durationSeconds, exposure, closest, nearby);
+    }
+
+    public void dispose() {
+        pool.shutdownNow();
+    }
+
+    // Fastest safe route, otherwise the cheapest trade-off between time and exposure
+    static Score best(List<Score> scores) {
+        Score fastestSafe = null, cheapest = null;
+        for (Score score : scores) {
+            if (score.isSafe() && (fastestSafe == null || score.durationSeconds < fastestSafe.durationSeconds)) {
+                fastestSafe = score;
+            }
+            if (cheapest == null || score.cost() < cheapest.cost()) cheapest = score;
+        }
+        return fastestSafe != null ? fastestSafe : cheapest;
+    }
+
+    // Repeated drone sightings are more certain than a single report
+    private static double severity(PointOfInterest hazard) {
+        return 1 + Math.log(Math.max(1, hazard.hits));
+    }
+
+    private static double distanceToRoute(GeoCoordinates p, List<GeoCoordinates> vertices, double latPad, double lonPad) {
+        if (vertices.size() == 1) return GeoMath.distanceMeters(p, vertices.get(0));
+        double closest = Double.MAX_VALUE;
+        for (int i = 1; i < vertices.size(); i++) {
+            GeoCoordinates a = vertices.get(i - 1), b = vertices.get(i);
+            // Segments whose padded bounds miss the point cannot be within range
+            if (p.latitude < Math.min(a.latitude, b.latitude) - latPad || p.latitude > Math.max(a.latitude, b.latitude) + latPad
+                    || p.longitude < Math.min(a.longitude, b.longitude) - lonPad || p.longitude > Math.max(a.longitude, b.longitude) + lonPad) {
+                continue;
+            }
+            closest = Math.min(closest, GeoMath.distanceToSegmentMeters(p, a, b));
+        }
+        return closest;
+    }
+}
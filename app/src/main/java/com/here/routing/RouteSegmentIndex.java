@@ -0,0 +1,85 @@
+package com.here.routing;
+
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.List;
+
+/**
+ * Bounding-box tree over the segments of a route polyline, for asking whether a point lies
+ * within a corridor around the route. Consecutive segments of a route are close together, so
+ * a balanced tree over the segment order already groups them spatially: a point away from
+ * the route is rejected near the root, and one beside it only descends the few branches
+ * whose boxes reach it. Immutable once built.
+ */
+public class RouteSegmentIndex {
+    private final List<GeoCoordinates> vertices;
+    private final double corridorMeters;
+    private final int leaves;
+    // Node i has children 2i and 2i + 1, leaves start at index leaves; boxes include the corridor
+    private final double[] south, west, north, east;
+
+    public RouteSegmentIndex(List<GeoCoordinates> vertices, double corridorMeters) {
+        this.vertices = vertices;
+        this.corridorMeters = corridorMeters;
+        int segments = Math.max(1, vertices.size() - 1);
+        int size = 1;
+        while (size < segments) size <<= 1;
+        leaves = size;
+        south = new double[2 * size];
+        west = new double[2 * size];
+        north = new double[2 * size];
+        east = new double[2 * size];
+
+        double latitude = vertices.isEmpty() ? 0 : vertices.get(0).latitude;
+        double latPad = GeoMath.metersToLatDegrees(corridorMeters);
+        double lonPad = GeoMath.metersToLonDegrees(corridorMeters, latitude);
+        for (int i = 0; i < size; i++) {
+            int node = size + i;
+            if (i >= segments || vertices.isEmpty()) {
+                // Padding leaves match nothing
+                south[node] = west[node] = Double.MAX_VALUE;
+                north[node] = east[node] = -Double.MAX_VALUE;
+                continue;
+            }
+            GeoCoordinates a = vertices.get(i), b = vertices.get(Math.min(i + 1, vertices.size() - 1));
+            south[node] = Math.min(a.latitude, b.latitude) - latPad;
+            north[node] = Math.max(a.latitude, b.latitude) + latPad;
+            west[node] = Math.min(a.longitude, b.longitude) - lonPad;
+            east[node] = Math.max(a.longitude, b.longitude) + lonPad;
+        }
+        for (int node = size - 1; node >= 1; node--) {
+            south[node] = Math.min(south[2 * node], south[2 * node + 1]);
+            west[node] = Math.min(west[2 * node], west[2 * node + 1]);
+            north[node] = Math.max(north[2 * node], north[2 * node + 1]);
+            east[node] = Math.max(east[2 * node], east[2 * node + 1]);
+        }
+    }
+
+    public boolean isEmpty() {
+        return vertices.isEmpty();
+    }
+
+    /** Whether {@code p} is within the corridor distance of any segment. */
+    public boolean inCorridor(GeoCoordinates p) {
+        if (vertices.isEmpty()) return false;
+        int[] stack = new int[2 * Integer.numberOfTrailingZeros(leaves) + 2];
+        int top = 0;
+        stack[top++] = 1;
+        while (top > 0) {
+            int node = stack[--top];
+            if (p.latitude < south[node] || p.latitude > north[node]
+                    || p.longitude < west[node] || p.longitude > east[node]) {
+                continue;
+            }
+            if (node >= leaves) {
+                int i = node - leaves;
+                GeoCoordinates a = vertices.get(i), b = vertices.get(Math.min(i + 1, vertices.size() - 1));
+                if (GeoMath.distanceToSegmentMeters(p, a, b) <= corridorMeters) return true;
+                continue;
+            }
+            stack[top++] = 2 * node + 1;
+            stack[top++] = 2 * node;
+        }
+        return false;
+    }
+}
@@ -1,6 +1,5 @@
 package com.here.routing;
 
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
@@ -8,206 +7,128 @@ import android.support.annotation.Nullable;
 import android.support.v7.app.AlertDialog;
 import android.util.Log;
 import android.view.Gravity;
+import android.widget.Toast;
 
 import com.here.sdk.core.GeoCoordinates;
-import com.here.sdk.core.GeoPolyline;
 import com.here.sdk.core.Point2D;
-import com.here.sdk.core.errors.InstantiationErrorException;
 import com.here.sdk.gestures.TapListener;
 import com.here.sdk.mapviewlite.Camera;
-import com.here.sdk.mapviewlite.MapImageFactory;
+import com.here.sdk.mapviewlite.CameraObserver;
 import com.here.sdk.mapviewlite.MapMarker;
-import com.here.sdk.mapviewlite.MapMarkerImageStyle;
 import com.here.sdk.mapviewlite.MapPolyline;
-import com.here.sdk.mapviewlite.MapPolylineStyle;
 import com.here.sdk.mapviewlite.MapViewLite;
 import com.here.sdk.mapviewlite.PickMapItemsCallback;
 import com.here.sdk.mapviewlite.PickMapItemsResult;
-import com.here.sdk.mapviewlite.PixelFormat;
-import com.here.sdk.routing.AvoidanceOptions;
-import com.here.sdk.routing.CarOptions;
-import com.here.sdk.routing.Maneuver;
-import com.here.sdk.routing.ManeuverAction;
-import com.here.sdk.routing.Route;
-import com.here.sdk.routing.RoutingEngine;
-import com.here.sdk.routing.Section;
-import com.here.sdk.routing.TrafficOptimizationMode;
-import com.here.sdk.routing.Waypoint;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class RoutingExample {
+public class RoutingExample implements PoiRepository.Observer {
 
     private static final String TAG = RoutingExample.class.getName();
     private static final int SUBMIT_REQUEST_CODE = 1;
+    private static final long TREND_WINDOW_MILLIS = 60 * 60 * 1000, TREND_STEP_MILLIS = 10 * 60 * 1000;
 
-    @SuppressLint("StaticFieldLeak")
-    public static Context context;
+    // The activity; everything that outlives it is in the repository
+    private final Context context;
     private final MapViewLite mapView;
     private final List<MapPolyline> mapPolylines = new ArrayList<>();
-    private final RoutingEngine routingEngine;
-    private final GeoCoordinates currentCoords = new GeoCoordinates(42.981485, -81.238093);
-    private PointOfInterest destinationPoint;
-    private GeoCoordinates touchCoords;
+    private final PoiRepository repository;
+    private final PoiStore poiStore;
+    private final SensorSeriesStore sensorStore;
+    private final MarkerReconciler markerReconciler;
+    private final CameraObserver cameraObserver;
 
     public RoutingExample(Context context, MapViewLite mapView) {
-        RoutingExample.context = context;
+        this.context = context;
         this.mapView = mapView;
+        // Created on first use, then kept warm across activity recreations
+        repository = PoiRepository.get(context);
+        poiStore = repository.getStore();
+        sensorStore = repository.getSensorStore();
+
         Camera camera = mapView.getCamera();
-        camera.setTarget(currentCoords);
+        camera.setTarget(repository.getCurrentCoords());
         camera.setZoomLevel(14);
 
-        try {
-            routingEngine = new RoutingEngine();
-        } catch (InstantiationErrorException e) {
-            throw new RuntimeException("Initialization of RoutingEngine failed: " + e.error.name());
-        }
-
-        new PointOfInterest("origin", "Current location", "London Firehouse 4", currentCoords, false);
+        markerReconciler = new MarkerReconciler(mapView.getMapScene(), poiStore, context.getResources());
+        // Cull and cluster markers as the user pans and zooms
+        cameraObserver = cameraUpdate -> markerReconciler.updateCamera(camera.getBoundingBox(), cameraUpdate.zoomLevel);
+        camera.addObserver(cameraObserver);
 
-        JsonApi.fetchJsonData(context, new JsonApi.DataCallback() {
-            @Override
-            public void onSuccess(List<PointOfInterest> points) {
-                for (PointOfInterest poi : points) {
-                    Log.d("POI", poi.toString());
-                }
-                drawMarkers();
-            }
-            @Override
-            public void onError(String error) {
-                Log.e("ERROR", "Failed to fetch JSON: " + error);
-            }
-        });
+        repository.attach(this);
+        // A route from before the activity was recreated is redrawn, not recalculated
+        PreparedRoute route = repository.getRoute();
+        if (route != null) showRouteOnMap(route);
+        drawMarkers();
 
         setTapGestureHandler();
     }
 
     public void fetchAndUpdateMap() {
-        JsonApi.fetchJsonData(context, new JsonApi.DataCallback() {
-            @Override
-            public void onSuccess(List<PointOfInterest> points) {
-                // Clear existing markers before adding new ones
-                clearMarkers();
-                // Add new POIs to the map
-                for (PointOfInterest poi : points) {
-                    Log.d("POI", "Loaded POI: " + poi.toString());
-                }
-                drawMarkers();
-            }
-
-            @Override
-            public void onError(String error) {
-                Log.e("ERROR", "Failed to fetch updated POIs: " + error);
-            }
-        });
+        repository.fetchAndUpdateMap();
     }
 
-    public void addRoute(GeoCoordinates start, GeoCoordinates end) {
-        Waypoint startWaypoint = new Waypoint(start);
-        Waypoint destinationWaypoint = new Waypoint(end);
-
-        List<Waypoint> waypoints =
-                new ArrayList<>(Arrays.asList(startWaypoint, destinationWaypoint));
-
-        routingEngine.calculateRoute(
-                waypoints,
-                getCarOptions(),
-
-                (routingError, routes) -> {
-                    // On Route Calculated Callback
-                    if (routingError == null) {
-                        Route route = routes.get(0);
-                        showRouteDetails(route);
-                        showRouteOnMap(route);
-                    } else {
-                        showDialog("Error while calculating a route:", routingError.toString());
-                    }
-                });
+    public void pauseUpdates() {
+        repository.pauseUpdates();
     }
 
-    private void showRouteDetails(Route route) {
-        long estimatedTravelTimeInSeconds = route.getDuration().getSeconds();
-        int lengthInMeters = route.getLengthInMeters();
-
-        String routeDetails =
-                "Time: " + formatTime(estimatedTravelTimeInSeconds) + " minutes "
-                + "\nDistance: " + lengthInMeters + " metres";
-
-        showDialog("Route Details", routeDetails);
+    public void resumeUpdates() {
+        repository.resumeUpdates();
     }
 
-    private String formatTime(long sec) {
-        long minutes = (sec % 3600) / 60;
-        sec %= 60;
-        return String.format(Locale.getDefault(), "%d:%02d", minutes, sec);
-    }
-
-    private void showRouteOnMap(Route route) {
-        // Optionally, remove any previous route.
-        clearMap();
-
-        if (route != null) {
-            // Show route as polyline.
-            GeoPolyline routeGeoPolyline = route.getGeometry();
-            MapPolylineStyle mapPolylineStyle = new MapPolylineStyle();
-            mapPolylineStyle.setColor(0x002DFFBF, PixelFormat.RGBA_8888);
-            mapPolylineStyle.setWidthInPixels(10);
-            MapPolyline routeMapPolyline = new MapPolyline(routeGeoPolyline, mapPolylineStyle);
-            mapView.getMapScene().addMapPolyline(routeMapPolyline);
-            mapPolylines.add(routeMapPolyline);
-
-            // Log maneuver instructions per route section.
-            List<Section> sections = route.getSections();
-            for (Section section : sections) {
-                logManeuverInstructions(section);
-            }
-        }
-
+    @Override
+    public void onPoisChanged() {
         drawMarkers();
     }
 
-    private void drawMarkers() {
-        if (PointOfInterest.getAll() == null || PointOfInterest.getAll().isEmpty()) {
-            Log.e("ERROR", "No POIs to draw");
+    @Override
+    public void onRouteChanged(PreparedRoute route) {
+        if (route == null) {
+            removeRoutePolylines();
+            drawMarkers();
             return;
         }
+        showDialog("Route Details", route.details);
+        showRouteOnMap(route);
+    }
 
-        clearMarkers();
+    @Override
+    public void onRouteFailed(String error) {
+        showDialog("Error while calculating a route:", error);
+    }
 
-        for (PointOfInterest poi : PointOfInterest.getAll()) {
-            mapView.getMapScene().addMapMarker(poi.marker);
-        }
+    @Override
+    public void onPositionChanged(GeoCoordinates position, boolean firstFix) {
+        if (firstFix) mapView.getCamera().setTarget(position);
+        drawMarkers();
+    }
+
+    @Override
+    public void onHazardNearby(PointOfInterest hazard, double distanceMeters) {
+        String text = "Hazard nearby: " + hazard.title + " (" + Math.round(distanceMeters) + " m)";
+        Toast.makeText(context, text, Toast.LENGTH_LONG).show();
     }
 
-    private CarOptions getCarOptions() {
-        CarOptions carOptions = new CarOptions();
-        carOptions.routeOptions.enableTolls = true;
-        // Disabled - Traffic optimization is completely disabled, including long-term road closures. It helps in producing stable routes.
-        // Time dependent - Traffic optimization is enabled, the shape of the route will be adjusted according to the traffic situation which depends on departure time and arrival time.
-        carOptions.routeOptions.trafficOptimizationMode = TrafficOptimizationMode.DISABLED;
+    private void showRouteOnMap(PreparedRoute prepared) {
+        // Optionally, remove any previous route.
+        removeRoutePolylines();
 
-        AvoidanceOptions avoidanceOptions = new AvoidanceOptions();
-        avoidanceOptions.avoidBoundingBoxAreas = PointOfInterest.getGeoBoxes(15, destinationPoint.marker);
-        carOptions.avoidanceOptions = avoidanceOptions;
+        MapPolyline mapPolyline = prepared.createMapPolyline();
+        mapView.getMapScene().addMapPolyline(mapPolyline);
+        mapPolylines.add(mapPolyline);
 
-        return carOptions;
+        drawMarkers();
     }
 
-    private void logManeuverInstructions(Section section) {
-        Log.d(TAG, "Log maneuver instructions per route section:");
-        List<Maneuver> maneuverInstructions = section.getManeuvers();
-        for (Maneuver maneuverInstruction : maneuverInstructions) {
-            ManeuverAction maneuverAction = maneuverInstruction.getAction();
-            GeoCoordinates maneuverLocation = maneuverInstruction.getCoordinates();
-            String maneuverInfo = maneuverInstruction.getText()
-                    + ", Action: " + maneuverAction.name()
-                    + ", Location: " + maneuverLocation.toString();
-            Log.d(TAG, maneuverInfo);
-        }
+    private void drawMarkers() {
+        // Still applied when empty so the last removals reach the map
+        if (poiStore.size() == 0) Log.e("ERROR", "No POIs to draw");
+
+        Camera camera = mapView.getCamera();
+        markerReconciler.updateCamera(camera.getBoundingBox(), camera.getZoomLevel());
     }
 
     public void clearMap() {
@@ -215,24 +136,26 @@ public class RoutingExample {
         clearMarkers();
 
         // Clear route
-        clearRoutes();
+        repository.clearRoute();
     }
 
     private void clearMarkers() {
-        for (MapMarker mapMarker : PointOfInterest.getMapMarkers()) {
-            mapView.getMapScene().removeMapMarker(mapMarker);
-        }
-        PointOfInterest.getMapMarkers().clear();
+        markerReconciler.clear();
     }
 
-    private void clearRoutes() {
+    // Only lets go of the map and the activity; the repository keeps running for the next one
+    public void dispose() {
+        repository.detach(this);
+        mapView.getCamera().removeObserver(cameraObserver);
+        markerReconciler.dispose();
+        removeRoutePolylines();
+    }
+
+    private void removeRoutePolylines() {
         for (MapPolyline mapPolyline : mapPolylines) {
             mapView.getMapScene().removeMapPolyline(mapPolyline);
         }
         mapPolylines.clear();
-
-        destinationPoint = null;
-        //mapView.getMapScene().removeMapMarker(PointOfInterest.lastTouchPoint.marker);
     }
 
     private void setTapGestureHandler() {
@@ -258,71 +181,104 @@ public class RoutingExample {
                     addTouchPoint(mapView.getCamera().viewToGeoCoordinates(touchPoint));
                     return;
                 }
+                MarkerClusterer.Cluster cluster = markerReconciler.getCluster(topmostMapMarker);
+                if (cluster != null) {
+                    // Expand the cluster by zooming in on it
+                    Camera camera = mapView.getCamera();
+                    camera.setTarget(cluster.center);
+                    camera.setZoomLevel(Math.min(camera.getZoomLevel() + 2, MarkerClusterer.MAX_CLUSTER_ZOOM));
+                    return;
+                }
                 showMarkerDetails(topmostMapMarker);
             }
         });
     }
 
     private void addTouchPoint(GeoCoordinates coordinates) {
-        new PointOfInterest("touchPoint", "Destination", "", coordinates, true);
-        if (PointOfInterest.lastTouchPoint != null) mapView.getMapScene().removeMapMarker(PointOfInterest.lastTouchPoint.marker);
-        touchCoords = coordinates;
+        repository.placeTouchPoint(coordinates);
         drawMarkers();
         showSubmitDialog();
     }
 
     public void onSubmitResult(Intent data) {
+        // The activity may have been recreated while the form was open, the tap is kept in the repository
+        PointOfInterest tapped = repository.getTouchPoint();
+        if (tapped == null) return;
         String title = data.getStringExtra("title");
         String description = data.getStringExtra("description");
         int typeID = data.getIntExtra("type", 0);
 
-        JsonApi.addPOIInBackground(new PointOfInterest(typeID==0?"hazard":"people", title, description, touchCoords, true));
+        // No lastSeen: only an ingestion service stamps points, so a user report stays until resolved
+        PointOfInterest submitted = new PointOfInterest(typeID==0?"hazard":"people", title, description,
+                tapped.coordinates, true);
+        repository.addPOI(submitted);
         drawMarkers();
 
-        clearRoutes();
+        repository.clearRoute();
         List<PointOfInterest> touchPoint = PointOfInterest.getType("touchPoint");
         if (!touchPoint.isEmpty()) {
-            destinationPoint = touchPoint.get(0);
-            addRoute(currentCoords, touchPoint.get(0).coordinates);
+            repository.routeTo(touchPoint.get(0));
         }
     }
 
     private void showMarkerDetails(MapMarker marker) {
+        // One id lookup serves every button of the dialog
+        PointOfInterest poi = poiStore.get(marker.getMetadata().getString("id"));
+        if (poi == null) return;
+
         new AlertDialog.Builder(context)
                 .setTitle(marker.getMetadata().getString("title"))
-                .setMessage(marker.getMetadata().getString("description"))
+                .setMessage(marker.getMetadata().getString("description") + sensorTrends(poi))
                 .setNegativeButton("Close", null)
                 .setNeutralButton("Mark Resolved", (dialogInterface, i) -> {
-                    // Handle "Set Resolved" logic here
-                    mapView.getMapScene().removeMapMarker(marker);
-
-                    // Remove point from database
-                    JsonApi.removePOIInBackground(PointOfInterest.getFromMarker(marker).title);
-
-                    // Clear route if destination removed
-                    if (PointOfInterest.getFromMarker(marker)==destinationPoint) clearRoutes();
-                    PointOfInterest.getFromMarker(marker).remove();
+                    // Remove point locally and from database, along with a route leading to it
+                    repository.removePOI(poi);
+                    drawMarkers();
 
                 })
                 .setPositiveButton("Get Route", (dialogInterface, i) -> {
-                    for (PointOfInterest poi : PointOfInterest.getType("touchPoint")) {
-                        poi.remove();
-                        mapView.getMapScene().removeMapMarker(poi.marker);
+                    for (PointOfInterest touchPoint : PointOfInterest.getType("touchPoint")) {
+                        poiStore.remove(touchPoint);
                     }
-                    destinationPoint = PointOfInterest.getFromMarker(marker);
-                    assert destinationPoint != null;
-                    addRoute(currentCoords, destinationPoint.coordinates);
+                    drawMarkers();
+                    repository.routeTo(poi);
                 })
                 .show();
     }
 
+    // Last hour of drone readings around the point, from the rollups rather than the description text
+    private String sensorTrends(PointOfInterest poi) {
+        long to = System.currentTimeMillis() / 60000 * 60000 + 60000;
+        long from = to - TREND_WINDOW_MILLIS;
+        StringBuilder trends = new StringBuilder();
+        appendTrend(trends, "Temperature", "C", SensorSeriesStore.TEMPERATURE, poi, from, to);
+        appendTrend(trends, "Humidity", "%", SensorSeriesStore.HUMIDITY, poi, from, to);
+        appendTrend(trends, "CO2", "PPM", SensorSeriesStore.CO2, poi, from, to);
+        return trends.length() == 0 ? "" : "\n\nLast hour:" + trends;
+    }
+
+    private void appendTrend(StringBuilder out, String label, String unit, int metric, PointOfInterest poi, long from, long to) {
+        List<SensorSeriesStore.Rollup> rollups = sensorStore.rollup(
+                poi.coordinates.latitude, poi.coordinates.longitude, metric, from, to, TREND_STEP_MILLIS);
+        if (rollups.isEmpty()) return;
+
+        float max = rollups.get(0).max;
+        StringBuilder means = new StringBuilder();
+        for (SensorSeriesStore.Rollup rollup : rollups) {
+            if (means.length() > 0) means.append(" \u2192 ");
+            means.append(String.format(Locale.getDefault(), "%.0f", rollup.mean));
+            max = Math.max(max, rollup.max);
+        }
+        out.append(String.format(Locale.getDefault(), "\n%s (%s): %s, max %.0f", label, unit, means, max));
+    }
+
     public void showSubmitDialog() {
         AtomicBoolean choseRoute = new AtomicBoolean(false);
+        PointOfInterest tapped = repository.getTouchPoint();
         AlertDialog dialog = new AlertDialog.Builder(context)
                 .setTitle("Add Point Here?")
                 .setNeutralButton("Get Route", (dialogInterface, i) -> {
-                    destinationPoint = PointOfInterest.lastTouchPoint;
-                    addRoute(currentCoords, destinationPoint.coordinates);
+                    repository.routeTo(tapped);
                     choseRoute.set(true);
                 })
                 .setNegativeButton("Cancel", null)
@@ -332,14 +288,14 @@ public class RoutingExample {
                 })
                 .setOnDismissListener(dialogInterface -> {
                     if (choseRoute.get()) {
-                        for (PointOfInterest poi : PointOfInterest.getTypeExcluding("touchPoint", PointOfInterest.lastTouchPoint.marker)) {
-                            poi.remove();
-                            mapView.getMapScene().removeMapMarker(poi.marker);
+                        for (PointOfInterest poi : PointOfInterest.getTypeExcluding("touchPoint", tapped)) {
+                            poiStore.remove(poi);
                         }
+                        drawMarkers();
                         return;
                     }
-                    mapView.getMapScene().removeMapMarker(PointOfInterest.lastTouchPoint.marker);
-                    PointOfInterest.lastTouchPoint.remove();
+                    poiStore.remove(tapped);
+                    drawMarkers();
                 })
                 .create();
 
@@ -0,0 +1,316 @@
+package com.here.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Environmental readings per drone and location, stored column by column in primitive
+ * arrays. Each series appends to an open block; full blocks are sealed with
+ * {@link TimeSeriesCodec} and kept for the retention period. Alongside the raw samples every
+ * series keeps one-minute rollups (count, sum, min, max per metric) in time order, so trend
+ * queries over hours never touch the compressed data. The rollup columns grow with the
+ * minutes a series actually has samples in, rather than reserving a day up front.
+ *
+ * Drones move on, so once a minute every series is trimmed to the retention period, and
+ * series whose last sample is older than that are dropped along with their cell. Time is
+ * taken from the readings themselves, as for sealing. Thread-safe.
+ */
+public class SensorSeriesStore {
+    public static final int HUMIDITY = 0, TEMPERATURE = 1, CO2 = 2;
+    private static final int METRICS = 3;
+    private static final int BLOCK_SIZE = 128;
+    private static final long ROLLUP_MILLIS = 60 * 1000;
+    private static final int INITIAL_ROLLUPS = 16;
+    private static final long SWEEP_MILLIS = 60 * 1000;
+    // Precision 7 cells are about 150 m across
+    private static final int CELL_PRECISION = 7;
+
+    private static final SensorSeriesStore INSTANCE = new SensorSeriesStore(24 * 60 * 60 * 1000L);
+
+    /** Samples of one series in a time range, as parallel columns. */
+    public static class Samples {
+        public final int droneId;
+        public final long[] times;
+        public final float[][] values; // [metric][sample]
+
+        Samples(int droneId, long[] times, float[][] values) {
+            this.droneId = droneId;
+            this.times = times;
+            this.values = values;
+        }
+    }
+
+    /** Aggregate of one metric over one downsampled bucket. */
+    public static class Rollup {
+        public final long start;
+        public final int count;
+        public final float min, max, mean;
+
+        Rollup(long start, int count, float min, float max, float mean) {
+            this.start = start;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+        }
+    }
+
+    private static final class Series {
+        final int droneId;
+        final List<TimeSeriesCodec.Block> sealed = new ArrayList<>();
+        final long[] openTimes = new long[BLOCK_SIZE];
+        final float[][] openValues = new float[METRICS][BLOCK_SIZE];
+        int openCount;
+        long lastTime = Long.MIN_VALUE;
+
+        // The first rollups entries are used, ordered by start
+        int rollups;
+        long[] rollupStart = new long[INITIAL_ROLLUPS];
+        int[] rollupCount = new int[INITIAL_ROLLUPS];
+        final float[][] rollupSum = new float[METRICS][INITIAL_ROLLUPS];
+        final float[][] rollupMin = new float[METRICS][INITIAL_ROLLUPS];
+        final float[][] rollupMax = new float[METRICS][INITIAL_ROLLUPS];
+
+        Series(int droneId) {
+            this.droneId = droneId;
+        }
+    }
+
+    private final long retentionMillis;
+    // Cell -> drone id -> series
+    private final Map<String, Map<Integer, Series>> byCell = new HashMap<>();
+    private long compressedBytes;
+    private long nextSweep = Long.MIN_VALUE;
+
+    public SensorSeriesStore(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    public static SensorSeriesStore get() { return INSTANCE; }
+
+    public synchronized void addAll(List<TelemetryReading> readings) {
+        for (TelemetryReading reading : readings) add(reading);
+    }
+
+    public synchronized void add(TelemetryReading reading) {
+        if (reading.timestamp >= nextSweep) {
+            evictStale(reading.timestamp);
+            nextSweep = reading.timestamp + SWEEP_MILLIS;
+        }
+
+        Series series = seriesFor(reading);
+        series.lastTime = Math.max(series.lastTime, reading.timestamp);
+        int i = series.openCount++;
+        series.openTimes[i] = reading.timestamp;
+        series.openValues[HUMIDITY][i] = reading.humidity;
+        series.openValues[TEMPERATURE][i] = reading.temperature;
+        series.openValues[CO2][i] = reading.co2;
+        if (series.openCount == BLOCK_SIZE) seal(series, reading.timestamp);
+
+        long bucket = reading.timestamp - Math.floorMod(reading.timestamp, ROLLUP_MILLIS);
+        int slot = rollupSlot(series, bucket);
+        float[] values = {reading.humidity, reading.temperature, reading.co2};
+        boolean first = series.rollupCount[slot]++ == 0;
+        for (int m = 0; m < METRICS; m++) {
+            float value = values[m];
+            series.rollupSum[m][slot] = first ? value : series.rollupSum[m][slot] + value;
+            series.rollupMin[m][slot] = first ? value : Math.min(series.rollupMin[m][slot], value);
+            series.rollupMax[m][slot] = first ? value : Math.max(series.rollupMax[m][slot], value);
+        }
+    }
+
+    /** Raw samples near a location in [from, to), one entry per drone, oldest first. */
+    public synchronized List<Samples> range(double latitude, double longitude, long from, long to) {
+        List<Samples> result = new ArrayList<>();
+        for (Series series : seriesNear(latitude, longitude)) {
+            List<long[]> timeParts = new ArrayList<>();
+            List<float[][]> valueParts = new ArrayList<>();
+            int total = 0;
+
+            long[] times = new long[BLOCK_SIZE];
+            float[][] values = new float[METRICS][BLOCK_SIZE];
+            for (TimeSeriesCodec.Block block : series.sealed) {
+                // Blocks are in time order, so the bounds prune without decoding
+                if (block.lastTime < from || block.firstTime >= to) continue;
+                TimeSeriesCodec.decode(block, times, values);
+                total += collect(times, values, block.count, from, to, timeParts, valueParts);
+            }
+            total += collect(series.openTimes, series.openValues, series.openCount, from, to, timeParts, valueParts);
+            if (total == 0) continue;
+
+            long[] allTimes = new long[total];
+            float[][] allValues = new float[METRICS][total];
+            int offset = 0;
+            for (int p = 0; p < timeParts.size(); p++) {
+                long[] part = timeParts.get(p);
+                System.arraycopy(part, 0, allTimes, offset, part.length);
+                for (int m = 0; m < METRICS; m++) System.arraycopy(valueParts.get(p)[m], 0, allValues[m], offset, part.length);
+                offset += part.length;
+            }
+            result.add(new Samples(series.droneId, allTimes, allValues));
+        }
+        return result;
+    }
+
+    /**
+     * One metric near a location, downsampled into buckets of the given size (a multiple of a
+     * minute) over [from, to), merged across drones. Buckets without samples are left out.
+     */
+    public synchronized List<Rollup> rollup(double latitude, double longitude, int metric, long from, long to, long bucketMillis) {
+        int buckets = (int) Math.max(1, (to - from + bucketMillis - 1) / bucketMillis);
+        int[] count = new int[buckets];
+        float[] sum = new float[buckets], min = new float[buckets], max = new float[buckets];
+        for (Series series : seriesNear(latitude, longitude)) {
+            for (int slot = 0; slot < series.rollups; slot++) {
+                long start = series.rollupStart[slot];
+                int n = series.rollupCount[slot];
+                if (start >= to) break;
+                if (n == 0 || start < from) continue;
+                int b = (int) ((start - from) / bucketMillis);
+                boolean first = count[b] == 0;
+                count[b] += n;
+                sum[b] += series.rollupSum[metric][slot];
+                min[b] = first ? series.rollupMin[metric][slot] : Math.min(min[b], series.rollupMin[metric][slot]);
+                max[b] = first ? series.rollupMax[metric][slot] : Math.max(max[b], series.rollupMax[metric][slot]);
+            }
+        }
+
+        List<Rollup> result = new ArrayList<>();
+        for (int b = 0; b < buckets; b++) {
+            if (count[b] == 0) continue;
+            result.add(new Rollup(from + b * bucketMillis, count[b], min[b], max[b], sum[b] / count[b]));
+        }
+        return result;
+    }
+
+    public synchronized String getStats() {
+        int series = 0;
+        for (Map<Integer, Series> drones : byCell.values()) series += drones.size();
+        return "cells=" + byCell.size() + " series=" + series + " compressedBytes=" + compressedBytes;
+    }
+
+    private Series seriesFor(TelemetryReading reading) {
+        String cell = Geohash.encode(reading.latitude, reading.longitude, CELL_PRECISION);
+        Map<Integer, Series> drones = byCell.get(cell);
+        if (drones == null) {
+            drones = new HashMap<>();
+            byCell.put(cell, drones);
+        }
+        Series series = drones.get(reading.droneId);
+        if (series == null) {
+            series = new Series(reading.droneId);
+            drones.put(reading.droneId, series);
+        }
+        return series;
+    }
+
+    private List<Series> seriesNear(double latitude, double longitude) {
+        List<Series> result = new ArrayList<>();
+        for (String cell : Geohash.cellsAround(latitude, longitude, CELL_PRECISION)) {
+            Map<Integer, Series> drones = byCell.get(cell);
+            if (drones != null) result.addAll(drones.values());
+        }
+        return result;
+    }
+
+    private void seal(Series series, long now) {
+        TimeSeriesCodec.Block block = TimeSeriesCodec.encode(series.openTimes, series.openValues, series.openCount);
+        series.sealed.add(block);
+        compressedBytes += block.sizeInBytes();
+        series.openCount = 0;
+        dropBlocksBefore(series, now - retentionMillis);
+    }
+
+    // Drops series that had no sample within the retention period and trims the others
+    private void evictStale(long now) {
+        long cutoff = now - retentionMillis;
+        Iterator<Map<Integer, Series>> cells = byCell.values().iterator();
+        while (cells.hasNext()) {
+            Map<Integer, Series> drones = cells.next();
+            Iterator<Series> it = drones.values().iterator();
+            while (it.hasNext()) {
+                Series series = it.next();
+                if (series.lastTime < cutoff) {
+                    dropBlocksBefore(series, Long.MAX_VALUE);
+                    it.remove();
+                } else {
+                    dropBlocksBefore(series, cutoff);
+                    dropRollupsBefore(series, cutoff - ROLLUP_MILLIS);
+                }
+            }
+            if (drones.isEmpty()) cells.remove();
+        }
+    }
+
+    private void dropBlocksBefore(Series series, long cutoff) {
+        while (!series.sealed.isEmpty() && series.sealed.get(0).lastTime < cutoff) {
+            compressedBytes -= series.sealed.remove(0).sizeInBytes();
+        }
+    }
+
+    // Index of the rollup that starts at bucket, inserted in order if there is none yet
+    private static int rollupSlot(Series series, long bucket) {
+        int n = series.rollups;
+        // Readings mostly arrive in order, so it is usually the last one
+        if (n > 0 && series.rollupStart[n - 1] == bucket) return n - 1;
+        int slot = Arrays.binarySearch(series.rollupStart, 0, n, bucket);
+        if (slot >= 0) return slot;
+        slot = -slot - 1;
+
+        if (n == series.rollupStart.length) {
+            int capacity = n * 2;
+            series.rollupStart = Arrays.copyOf(series.rollupStart, capacity);
+            series.rollupCount = Arrays.copyOf(series.rollupCount, capacity);
+            for (int m = 0; m < METRICS; m++) {
+                series.rollupSum[m] = Arrays.copyOf(series.rollupSum[m], capacity);
+                series.rollupMin[m] = Arrays.copyOf(series.rollupMin[m], capacity);
+                series.rollupMax[m] = Arrays.copyOf(series.rollupMax[m], capacity);
+            }
+        }
+        moveRollups(series, slot, slot + 1, n - slot);
+        series.rollupStart[slot] = bucket;
+        series.rollupCount[slot] = 0;
+        series.rollups++;
+        return slot;
+    }
+
+    private static void dropRollupsBefore(Series series, long cutoff) {
+        int drop = 0;
+        while (drop < series.rollups && series.rollupStart[drop] < cutoff) drop++;
+        if (drop == 0) return;
+        moveRollups(series, drop, 0, series.rollups - drop);
+        series.rollups -= drop;
+    }
+
+    private static void moveRollups(Series series, int from, int to, int count) {
+        System.arraycopy(series.rollupStart, from, series.rollupStart, to, count);
+        System.arraycopy(series.rollupCount, from, series.rollupCount, to, count);
+        for (int m = 0; m < METRICS; m++) {
+            System.arraycopy(series.rollupSum[m], from, series.rollupSum[m], to, count);
+            System.arraycopy(series.rollupMin[m], from, series.rollupMin[m], to, count);
+            System.arraycopy(series.rollupMax[m], from, series.rollupMax[m], to, count);
+        }
+    }
+
+    private static int collect(long[] times, float[][] values, int count, long from, long to,
+                               List<long[]> timeParts, List<float[][]> valueParts) {
+        int start = 0;
+        while (start < count && times[start] < from) start++;
+        int end = start;
+        while (end < count && times[end] < to) end++;
+        int n = end - start;
+        if (n == 0) return 0;
+
+        long[] partTimes = new long[n];
+        System.arraycopy(times, start, partTimes, 0, n);
+        float[][] partValues = new float[METRICS][n];
+        for (int m = 0; m < METRICS; m++) System.arraycopy(values[m], start, partValues[m], 0, n);
+        timeParts.add(partTimes);
+        valueParts.add(partValues);
+        return n;
+    }
+}
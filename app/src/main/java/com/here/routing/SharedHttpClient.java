@@ -0,0 +1,226 @@
+package com.here.routing;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Application-wide HTTP layer for the bin traffic.
+ *
+ * Connections are kept alive and pooled by {@link HttpURLConnection}: every response body is
+ * read to the end and closed, and connections are never disconnected, so sockets go back to
+ * the pool instead of being torn down after each call. Responses are requested gzipped, GETs
+ * are conditional on the last ETag seen for the URL (a 304 returns the cached body), and
+ * failed idempotent calls are retried with exponential backoff.
+ */
+public final class SharedHttpClient {
+    private static final String TAG = SharedHttpClient.class.getSimpleName();
+
+    public static class Config {
+        public final int connectTimeoutMillis;
+        public final int readTimeoutMillis;
+        public final int maxRetries;
+        public final long retryBackoffMillis;
+        // JsonBin does not accept compressed bodies, so this is only on for servers that do
+        public final boolean gzipRequests;
+
+        public Config(int connectTimeoutMillis, int readTimeoutMillis, int maxRetries,
+                      long retryBackoffMillis, boolean gzipRequests) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.maxRetries = maxRetries;
+            this.retryBackoffMillis = retryBackoffMillis;
+            this.gzipRequests = gzipRequests;
+        }
+    }
+
+    public static final Config DEFAULT_CONFIG = new Config(10000, 15000, 2, 500, false);
+
+    public static class Response {
+        public final int code;
+        public final byte[] body;
+        // True when the server answered 304 and body is the cached copy
+        public final boolean notModified;
+
+        Response(int code, byte[] body, boolean notModified) {
+            this.code = code;
+            this.body = body;
+            this.notModified = notModified;
+        }
+
+        public boolean isSuccessful() { return code >= 200 && code < 300 || notModified; }
+    }
+
+    private static class CachedBody {
+        final String etag;
+        final byte[] body;
+
+        CachedBody(String etag, byte[] body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    private static final SharedHttpClient INSTANCE = new SharedHttpClient();
+
+    private final Map<String, CachedBody> etagCache = new HashMap<>();
+    private volatile Config config = DEFAULT_CONFIG;
+    private int requests, notModified, retries;
+
+    private SharedHttpClient() {}
+
+    public static SharedHttpClient get() { return INSTANCE; }
+
+    public Config getConfig() { return config; }
+
+    public void setConfig(Config config) { this.config = config; }
+
+    /** Conditional GET; a 304 is reported with the body cached from the last 200, or fetched again without one. */
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        CachedBody cached;
+        synchronized (etagCache) {
+            cached = etagCache.get(url);
+        }
+        Map<String, String> requestHeaders = new HashMap<>(headers);
+        if (cached != null) requestHeaders.put("If-None-Match", cached.etag);
+
+        Response response = execute("GET", url, requestHeaders, null, null);
+        if (response.code != HttpURLConnection.HTTP_NOT_MODIFIED) return response;
+        if (cached != null) {
+            synchronized (this) { notModified++; }
+            return new Response(response.code, cached.body, true);
+        }
+        // Validated against something we hold no body for, e.g. a caller's own If-None-Match
+        requestHeaders.remove("If-None-Match");
+        requestHeaders.remove("If-Modified-Since");
+        return execute("GET", url, requestHeaders, null, null);
+    }
+
+    /** PUT that replaces the resource; drops the cached copy since its ETag is now stale. */
+    public Response put(String url, Map<String, String> headers, byte[] body, String contentType) throws IOException {
+        Response response = execute("PUT", url, headers, body, contentType);
+        synchronized (etagCache) {
+            etagCache.remove(url);
+        }
+        return response;
+    }
+
+    /** POST of an operation batch; servers deduplicate those by op id, so retrying is safe. */
+    public Response post(String url, Map<String, String> headers, byte[] body, String contentType) throws IOException {
+        return execute("POST", url, headers, body, contentType);
+    }
+
+    public void clearCache() {
+        synchronized (etagCache) {
+            etagCache.clear();
+        }
+    }
+
+    public synchronized String getStats() {
+        return "requests=" + requests + " notModified=" + notModified + " retries=" + retries;
+    }
+
+    // Every request sent here is idempotent, so any failure can be retried as is
+    private Response execute(String method, String url, Map<String, String> headers, byte[] body,
+                             String contentType) throws IOException {
+        Config config = this.config;
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= config.maxRetries; attempt++) {
+            if (attempt > 0) {
+                synchronized (this) { retries++; }
+                sleep(config.retryBackoffMillis << (attempt - 1));
+            }
+            try {
+                Response response = executeOnce(method, url, headers, body, contentType, config);
+                // Server errors and throttling are worth another try, other codes are final
+                if (response.code < 500 && response.code != 429) return response;
+                lastError = new IOException(method + " " + url + " failed with " + response.code);
+            } catch (IOException e) {
+                lastError = e;
+            }
+            Log.w(TAG, method + " attempt " + (attempt + 1) + " failed: " + lastError.getMessage());
+        }
+        throw lastError;
+    }
+
+    private Response executeOnce(String method, String url, Map<String, String> headers, byte[] body,
+                                 String contentType, Config config) throws IOException {
+        synchronized (this) { requests++; }
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(config.connectTimeoutMillis);
+        connection.setReadTimeout(config.readTimeoutMillis);
+        // Setting this ourselves turns off transparent decompression, so gzip is decoded below
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        if (body != null) {
+            byte[] payload = body;
+            if (config.gzipRequests) {
+                payload = gzip(body);
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(payload.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(payload);
+            }
+        }
+
+        int code = connection.getResponseCode();
+        InputStream raw = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        byte[] responseBody = new byte[0];
+        if (raw != null) {
+            boolean gzipped = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+            // Reading to the end and closing is what hands the socket back to the pool
+            try (InputStream in = gzipped && code != HttpURLConnection.HTTP_NOT_MODIFIED ? new GZIPInputStream(raw) : raw) {
+                responseBody = readFully(in);
+            }
+        }
+
+        String etag = connection.getHeaderField("ETag");
+        if ("GET".equals(method) && code == HttpURLConnection.HTTP_OK && etag != null) {
+            synchronized (etagCache) {
+                etagCache.put(url, new CachedBody(etag, responseBody));
+            }
+        }
+        return new Response(code, responseBody, false);
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while backing off", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.here.routing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform lat/lon grid. Items are bucketed by the cell containing their point, so box and
+ * radius queries only visit the cells they overlap instead of every item.
+ */
+public class SpatialGrid<T> {
+    private final double cellSizeDegrees;
+    private final Map<Long, List<T>> cells = new HashMap<>();
+    private int size;
+
+    public SpatialGrid(double cellSizeDegrees) {
+        this.cellSizeDegrees = cellSizeDegrees;
+    }
+
+    public void insert(T item, double latitude, double longitude) {
+        long key = key(cellIndex(latitude), cellIndex(longitude));
+        List<T> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>(4);
+            cells.put(key, cell);
+        }
+        cell.add(item);
+        size++;
+    }
+
+    public boolean remove(T item, double latitude, double longitude) {
+        long key = key(cellIndex(latitude), cellIndex(longitude));
+        List<T> cell = cells.get(key);
+        if (cell == null) return false;
+
+        for (int i = 0; i < cell.size(); i++) {
+            if (cell.get(i) == item) {
+                // Order within a cell does not matter, so swap-remove
+                int last = cell.size() - 1;
+                cell.set(i, cell.get(last));
+                cell.remove(last);
+                if (cell.isEmpty()) cells.remove(key);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Adds every item whose cell overlaps the box to {@code out}; callers filter exact bounds. */
+    public void queryCells(double minLat, double minLon, double maxLat, double maxLon, List<T> out) {
+        int minRow = cellIndex(minLat), maxRow = cellIndex(maxLat);
+        int minCol = cellIndex(minLon), maxCol = cellIndex(maxLon);
+
+        // A box covering more cells than exist is cheaper to answer by walking the occupied ones
+        long spanned = (long) (maxRow - minRow + 1) * (maxCol - minCol + 1);
+        if (spanned > cells.size()) {
+            for (Map.Entry<Long, List<T>> entry : cells.entrySet()) {
+                int row = (int) (entry.getKey() >> 32);
+                int col = (int) (long) entry.getKey();
+                if (row >= minRow && row <= maxRow && col >= minCol && col <= maxCol) {
+                    out.addAll(entry.getValue());
+                }
+            }
+            return;
+        }
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                List<T> cell = cells.get(key(row, col));
+                if (cell != null) out.addAll(cell);
+            }
+        }
+    }
+
+    public int size() { return size; }
+
+    public void clear() {
+        cells.clear();
+        size = 0;
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / cellSizeDegrees);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+}
@@ -0,0 +1,94 @@
+package com.here.routing;
+
+import com.google.gson.JsonObject;
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.UUID;
+
+/**
+ * A single add/remove mutation of the shared POI set. Operations are what clients push and
+ * pull instead of the whole points document; field names double as the wire format.
+ */
+public class SyncOperation {
+    public enum Kind { ADD, REMOVE }
+
+    public String opId;
+    public String clientId;
+    public Kind kind;
+    public String poiId;
+    // Last server revision the client had seen when it created the operation
+    public long baseRevision;
+    // Assigned by the server once the operation is accepted
+    public long revision;
+
+    // Payload, only set for ADD (REMOVE keeps the title for logs)
+    public String type, title, description;
+    public double latitude, longitude;
+    public boolean userSubmitted;
+    // Sightings merged into the point so far and when the last one was, carried unchanged so a
+    // client's edit does not reset a drone hazard's history
+    public int hits = 1;
+    public long lastSeen;
+    // Set on an ADD that introduced a new POI rather than replacing one; local only, not sent
+    public transient boolean createsPoi;
+
+    public static SyncOperation add(String clientId, PointOfInterest poi) {
+        SyncOperation op = create(clientId, Kind.ADD, poi.id);
+        op.type = poi.type;
+        op.title = poi.title;
+        op.description = poi.description;
+        op.latitude = poi.coordinates.latitude;
+        op.longitude = poi.coordinates.longitude;
+        op.userSubmitted = poi.userSubmitted;
+        op.hits = poi.hits;
+        op.lastSeen = poi.lastSeen;
+        return op;
+    }
+
+    public static SyncOperation remove(String clientId, PointOfInterest poi) {
+        SyncOperation op = create(clientId, Kind.REMOVE, poi.id);
+        op.title = poi.title;
+        return op;
+    }
+
+    public static SyncOperation remove(String clientId, String poiId) {
+        return create(clientId, Kind.REMOVE, poiId);
+    }
+
+    private static SyncOperation create(String clientId, Kind kind, String poiId) {
+        SyncOperation op = new SyncOperation();
+        op.opId = UUID.randomUUID().toString();
+        op.clientId = clientId;
+        op.kind = kind;
+        op.poiId = poiId;
+        return op;
+    }
+
+    /** The point an ADD puts in place. */
+    public PointOfInterest toPoi() {
+        return new PointOfInterest(poiId, type, title, description, new GeoCoordinates(latitude, longitude),
+                userSubmitted, Math.max(1, hits), lastSeen);
+    }
+
+    /** The bin entry an ADD puts in place. */
+    public JsonObject toPoiJson() {
+        JsonObject coordinates = new JsonObject();
+        coordinates.addProperty("latitude", latitude);
+        coordinates.addProperty("longitude", longitude);
+
+        JsonObject poi = new JsonObject();
+        poi.addProperty("id", poiId);
+        poi.addProperty("type", type);
+        poi.addProperty("title", title);
+        poi.addProperty("description", description);
+        poi.add("coordinates", coordinates);
+        poi.addProperty("userSubmitted", userSubmitted);
+        if (hits > 1) poi.addProperty("hits", hits);
+        if (lastSeen != 0) poi.addProperty("lastSeen", lastSeen);
+        return poi;
+    }
+
+    public String toString() {
+        return kind + " " + poiId + " (op " + opId + ", rev " + revision + ")";
+    }
+}
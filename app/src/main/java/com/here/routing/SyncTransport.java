@@ -0,0 +1,26 @@
+package com.here.routing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Server side of the delta sync protocol, as seen by {@link DeltaSyncClient}. */
+public interface SyncTransport {
+
+    /** Applies {@code operations} in order and returns which were accepted and which conflicted. */
+    PushResult push(String clientId, long baseRevision, List<SyncOperation> operations) throws IOException;
+
+    /** Returns every accepted operation with a revision greater than {@code sinceRevision}. */
+    PullResult pull(long sinceRevision) throws IOException;
+
+    class PushResult {
+        public long revision;
+        public List<SyncOperation> accepted = new ArrayList<>();
+        public List<SyncOperation> conflicts = new ArrayList<>();
+    }
+
+    class PullResult {
+        public long revision;
+        public List<SyncOperation> operations = new ArrayList<>();
+    }
+}
@@ -0,0 +1,57 @@
+package com.here.routing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One sensor sample from a drone, and its binary wire format. A frame is a big-endian
+ * {@code u16} length followed by that many bytes:
+ * <pre>
+ *   u8  version (1)
+ *   u32 drone id
+ *   i64 sample time, epoch millis (0 = stamp on receipt)
+ *   f32 latitude, f32 longitude
+ *   f32 humidity %, f32 temperature C, f32 CO2 ppm
+ * </pre>
+ */
+public final class TelemetryReading {
+    public static final int VERSION = 1;
+    public static final int BODY_LENGTH = 1 + 4 + 8 + 5 * 4;
+
+    public final int droneId;
+    public final long timestamp;
+    public final float latitude, longitude;
+    public final float humidity, temperature, co2;
+
+    public TelemetryReading(int droneId, long timestamp, float latitude, float longitude,
+                            float humidity, float temperature, float co2) {
+        this.droneId = droneId;
+        this.timestamp = timestamp;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.humidity = humidity;
+        this.temperature = temperature;
+        this.co2 = co2;
+    }
+
+    /** Decodes a frame body (without the length prefix); receivedAt stands in for a missing sample time. */
+    public static TelemetryReading decode(ByteBuffer body, long receivedAt) {
+        body.get(); // Version, checked by the caller
+        int droneId = body.getInt();
+        long timestamp = body.getLong();
+        return new TelemetryReading(droneId, timestamp != 0 ? timestamp : receivedAt,
+                body.getFloat(), body.getFloat(), body.getFloat(), body.getFloat(), body.getFloat());
+    }
+
+    /** Writes the full frame, length prefix included. */
+    public void encode(ByteBuffer out) {
+        out.putShort((short) BODY_LENGTH);
+        out.put((byte) VERSION);
+        out.putInt(droneId);
+        out.putLong(timestamp);
+        out.putFloat(latitude);
+        out.putFloat(longitude);
+        out.putFloat(humidity);
+        out.putFloat(temperature);
+        out.putFloat(co2);
+    }
+}
@@ -0,0 +1,302 @@
+package com.here.routing;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion endpoint for drone sensor telemetry. Drones keep one TCP connection open and
+ * stream {@link TelemetryReading} frames over it; a single selector thread reads every
+ * connection without blocking, so hundreds of drones cost no thread each. Decoded readings
+ * are collected and handed to the {@link SensorSeriesStore} and the threshold checks once
+ * per flush interval, in one batch.
+ *
+ * A threshold fires when a drone's reading rises above its limit and re-arms only once the
+ * reading dropped below a lower clear level, so a value hovering at the limit reports one
+ * hazard rather than one per sample. Fired thresholds become detections for the
+ * {@link HazardSink}.
+ *
+ * The port is reachable by anything on the network, and detections end up in the shared
+ * bin, so a connection has to open with an auth frame carrying the drone key: a body of
+ * {@code u8 0xA5} followed by the key in UTF-8. Connections that send anything else first,
+ * or the wrong key, are closed before a single reading is accepted.
+ */
+public class TelemetryServer {
+    private static final String TAG = TelemetryServer.class.getSimpleName();
+    private static final int MAX_FRAME_LENGTH = 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    static final int AUTH_FRAME = 0xA5;
+
+    public interface HazardSink {
+        void report(JsonObject detection);
+    }
+
+    public enum Metric { HUMIDITY, TEMPERATURE, CO2 }
+
+    public static class Threshold {
+        public final Metric metric;
+        public final float limit, clearBelow;
+        public final String title;
+
+        public Threshold(Metric metric, float limit, float clearBelow, String title) {
+            this.metric = metric;
+            this.limit = limit;
+            this.clearBelow = clearBelow;
+            this.title = title;
+        }
+
+        float valueOf(TelemetryReading reading) {
+            switch (metric) {
+                case HUMIDITY: return reading.humidity;
+                case TEMPERATURE: return reading.temperature;
+                default: return reading.co2;
+            }
+        }
+    }
+
+    public static final Threshold[] DEFAULT_THRESHOLDS = {
+            new Threshold(Metric.CO2, 1000, 800, "POOR AIR"),
+            new Threshold(Metric.TEMPERATURE, 40, 35, "EXTREME HEAT"),
+    };
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final SensorSeriesStore store;
+    private final Threshold[] thresholds;
+    private final HazardSink sink;
+    private final Thread selectorThread;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+    private final byte[] droneKey;
+
+    // Per connection state, selector thread only
+    private static class Connection {
+        // Keeps the partial frame between reads
+        final ByteBuffer in = ByteBuffer.allocate(4096);
+        boolean authenticated;
+    }
+
+    // Filled by the selector thread, swapped out by the flusher; guarded by itself
+    private List<TelemetryReading> batch = new ArrayList<>();
+    // Drone id -> bit per threshold that has fired and not cleared yet; flusher thread only
+    private final Map<Integer, Integer> firing = new HashMap<>();
+    // Only written by the selector thread
+    private volatile long frames, rejectedFrames, unauthorized;
+    private volatile int connections;
+
+    public TelemetryServer(InetAddress address, int port, String droneKey, SensorSeriesStore store,
+                           Threshold[] thresholds, HazardSink sink) throws IOException {
+        if (droneKey == null || droneKey.isEmpty()) throw new IllegalArgumentException("A drone key is required");
+        this.droneKey = droneKey.getBytes(StandardCharsets.UTF_8);
+        this.store = store;
+        this.thresholds = thresholds;
+        this.sink = sink;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(address, port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        selectorThread = new Thread(this::selectLoop, TAG);
+        selectorThread.start();
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @SuppressLint("DefaultLocale")
+    public String getStats() {
+        return String.format("frames=%d rejected=%d unauthorized=%d connections=%d %s",
+                frames, rejectedFrames, unauthorized, connections, store.getStats());
+    }
+
+    /** The auth frame a drone opens its connection with, length prefix included. */
+    public static byte[] authFrame(String droneKey) {
+        byte[] key = droneKey.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(2 + 1 + key.length);
+        frame.putShort((short) (1 + key.length));
+        frame.put((byte) AUTH_FRAME);
+        frame.put(key);
+        return frame.array();
+    }
+
+    public void stop() {
+        selectorThread.interrupt();
+        selector.wakeup();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void selectLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) read(key);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Selector failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) close(key);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close selector", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+        connections++;
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer in = connection.in;
+        try {
+            if (channel.read(in) < 0) {
+                close(key);
+                return;
+            }
+        } catch (IOException e) {
+            close(key);
+            return;
+        }
+
+        in.flip();
+        long now = System.currentTimeMillis();
+        List<TelemetryReading> decoded = new ArrayList<>();
+        while (in.remaining() >= 2) {
+            int length = in.getShort(in.position()) & 0xFFFF;
+            if (length > MAX_FRAME_LENGTH) {
+                // Not our protocol, or hopelessly out of sync
+                rejectedFrames++;
+                close(key);
+                return;
+            }
+            if (in.remaining() < 2 + length) break;
+
+            in.position(in.position() + 2);
+            int end = in.position() + length;
+            if (!connection.authenticated) {
+                if (!isValidAuth(in, length)) {
+                    unauthorized++;
+                    close(key);
+                    return;
+                }
+                connection.authenticated = true;
+            } else if (length >= TelemetryReading.BODY_LENGTH && in.get(in.position()) == TelemetryReading.VERSION) {
+                decoded.add(TelemetryReading.decode(in, now));
+            } else {
+                rejectedFrames++;
+            }
+            // Skips trailing fields of newer frame versions
+            in.position(end);
+        }
+        in.compact();
+
+        if (decoded.isEmpty()) return;
+        frames += decoded.size();
+        synchronized (this) {
+            batch.addAll(decoded);
+        }
+    }
+
+    private boolean isValidAuth(ByteBuffer in, int length) {
+        if (length < 1 || (in.get(in.position()) & 0xFF) != AUTH_FRAME) return false;
+        byte[] key = new byte[length - 1];
+        in.position(in.position() + 1);
+        in.get(key);
+        // Constant time, so the key cannot be guessed byte by byte
+        return MessageDigest.isEqual(key, droneKey);
+    }
+
+    private void close(SelectionKey key) {
+        if (key.channel() instanceof SocketChannel) connections--;
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close telemetry connection", e);
+        }
+    }
+
+    private void flush() {
+        List<TelemetryReading> readings;
+        synchronized (this) {
+            if (batch.isEmpty()) return;
+            readings = batch;
+            batch = new ArrayList<>(readings.size());
+        }
+        store.addAll(readings);
+        for (TelemetryReading reading : readings) checkThresholds(reading);
+    }
+
+    private void checkThresholds(TelemetryReading reading) {
+        Integer state = firing.get(reading.droneId);
+        int bits = state == null ? 0 : state;
+        for (int t = 0; t < thresholds.length; t++) {
+            Threshold threshold = thresholds[t];
+            float value = threshold.valueOf(reading);
+            int bit = 1 << t;
+            if ((bits & bit) == 0 && value > threshold.limit) {
+                bits |= bit;
+                sink.report(detection(reading, threshold));
+            } else if ((bits & bit) != 0 && value < threshold.clearBelow) {
+                bits &= ~bit;
+            }
+        }
+        firing.put(reading.droneId, bits);
+    }
+
+    @SuppressLint("DefaultLocale")
+    private static JsonObject detection(TelemetryReading reading, Threshold threshold) {
+        JsonObject detection = new JsonObject();
+        detection.addProperty("type", "hazard");
+        detection.addProperty("title", threshold.title);
+        // Same shape as the text the sketch used to send
+        detection.addProperty("description", String.format("\nHumidity: %.0f%%\nTemperature %.2fC\nCO2: %.2f PPM",
+                reading.humidity, reading.temperature, reading.co2));
+        detection.addProperty("latitude", reading.latitude);
+        detection.addProperty("longitude", reading.longitude);
+        return detection;
+    }
+}
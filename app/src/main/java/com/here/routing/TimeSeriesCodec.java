@@ -0,0 +1,190 @@
+package com.here.routing;
+
+import java.util.Arrays;
+
+/**
+ * Gorilla-style compression for sealed blocks of sensor samples. Timestamps are stored as
+ * delta-of-deltas, which are zero or tiny for drones reporting at a steady rate, and every
+ * float column is XORed with its previous value so unchanged or slowly moving readings
+ * take one or a handful of bits instead of 32.
+ */
+public final class TimeSeriesCodec {
+
+    private TimeSeriesCodec() {}
+
+    /** An immutable compressed block; {@link #decode} restores it. */
+    public static final class Block {
+        public final int count;
+        public final long firstTime, lastTime;
+        final int columns;
+        final long[] bits;
+
+        Block(int count, long firstTime, long lastTime, int columns, long[] bits) {
+            this.count = count;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.columns = columns;
+            this.bits = bits;
+        }
+
+        public int sizeInBytes() { return bits.length * 8; }
+    }
+
+    public static Block encode(long[] times, float[][] columns, int count) {
+        BitWriter out = new BitWriter(count * (2 + columns.length));
+        out.write(times[0], 64);
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = times[i] - times[i - 1];
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+        }
+
+        for (float[] column : columns) {
+            int previous = Float.floatToRawIntBits(column[0]);
+            out.write(previous, 32);
+            int previousLeading = -1, previousTrailing = 0;
+            for (int i = 1; i < count; i++) {
+                int value = Float.floatToRawIntBits(column[i]);
+                int xor = value ^ previous;
+                previous = value;
+                if (xor == 0) {
+                    out.write(0, 1);
+                    continue;
+                }
+                int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+                int trailing = Integer.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // Fits in the previous window of meaningful bits
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+                } else {
+                    int length = 32 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(length - 1, 5);
+                    out.write(xor >>> trailing, length);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+        }
+        return new Block(count, times[0], times[count - 1], columns.length, out.toArray());
+    }
+
+    /** Decodes a block into the given arrays, which must hold at least {@code block.count} values. */
+    public static void decode(Block block, long[] times, float[][] columns) {
+        BitReader in = new BitReader(block.bits);
+        times[0] = in.read(64);
+        long delta = 0;
+        for (int i = 1; i < block.count; i++) {
+            delta += readDeltaOfDelta(in);
+            times[i] = times[i - 1] + delta;
+        }
+
+        for (int c = 0; c < block.columns; c++) {
+            float[] column = columns[c];
+            int previous = (int) in.read(32);
+            column[0] = Float.intBitsToFloat(previous);
+            int leading = 0, trailing = 0;
+            for (int i = 1; i < block.count; i++) {
+                if (in.read(1) != 0) {
+                    if (in.read(1) != 0) {
+                        leading = (int) in.read(5);
+                        int length = (int) in.read(5) + 1;
+                        trailing = 32 - leading - length;
+                    }
+                    int meaningful = 32 - leading - trailing;
+                    previous ^= (int) in.read(meaningful) << trailing;
+                }
+                column[i] = Float.intBitsToFloat(previous);
+            }
+        }
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.write(0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            out.write(0b10, 2);
+            out.write(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            out.write(0b110, 3);
+            out.write(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            out.write(0b1110, 4);
+            out.write(dod, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (in.read(1) == 0) return 0;
+        if (in.read(1) == 0) return signExtend(in.read(7), 7);
+        if (in.read(1) == 0) return signExtend(in.read(9), 9);
+        if (in.read(1) == 0) return signExtend(in.read(12), 12);
+        return in.read(64);
+    }
+
+    private static long signExtend(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static final class BitWriter {
+        private long[] words;
+        private int bitCount;
+
+        BitWriter(int expectedBits) {
+            words = new long[Math.max(1, (expectedBits + 63) / 64)];
+        }
+
+        // Writes the low {@code bits} bits of value, most significant first
+        void write(long value, int bits) {
+            if (bits == 0) return;
+            if (bits < 64) value &= (1L << bits) - 1;
+            int needed = (bitCount + bits + 63) / 64;
+            if (needed > words.length) words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+
+            int offset = bitCount & 63;
+            int index = bitCount >>> 6;
+            int free = 64 - offset;
+            if (bits <= free) {
+                words[index] |= value << (free - bits);
+            } else {
+                words[index] |= value >>> (bits - free);
+                words[index + 1] |= value << (64 - (bits - free));
+            }
+            bitCount += bits;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (bitCount + 63) / 64);
+        }
+    }
+
+    private static final class BitReader {
+        private final long[] words;
+        private int position;
+
+        BitReader(long[] words) {
+            this.words = words;
+        }
+
+        long read(int bits) {
+            if (bits == 0) return 0;
+            int offset = position & 63;
+            int index = position >>> 6;
+            int available = 64 - offset;
+            long value;
+            if (bits <= available) {
+                value = words[index] >>> (available - bits);
+            } else {
+                value = (words[index] << (bits - available)) | (words[index + 1] >>> (64 - (bits - available)));
+            }
+            position += bits;
+            return bits == 64 ? value : value & ((1L << bits) - 1);
+        }
+    }
+}
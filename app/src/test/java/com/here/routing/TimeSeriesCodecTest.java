@@ -0,0 +1,46 @@
+package com.here.routing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips through {@link TimeSeriesCodec}, with timestamps whose delta-of-deltas sit on
+ * both edges of every encoding range.
+ */
+public class TimeSeriesCodecTest {
+
+    @Test
+    public void irregularTimestampsRoundTrip() {
+        assertRoundTrip(new long[]{1000, 2000, 3064, 4128, 5448, 7800});
+    }
+
+    @Test
+    public void rangeBoundariesRoundTrip() {
+        long[] boundaries = {-64, 63, -65, 64, -256, 255, -257, 256, -2048, 2047, -2049, 2048};
+        for (long dod : boundaries) {
+            // A steady delta, then one that differs from it by exactly dod
+            long base = 10_000;
+            assertRoundTrip(new long[]{0, base, 2 * base, 3 * base + dod, 4 * base + dod});
+        }
+    }
+
+    @Test
+    public void columnsRoundTrip() {
+        long[] times = {0, 1000, 2000, 3000};
+        float[][] columns = {{21.5f, 21.5f, 21.75f, -3f}, {0f, Float.NaN, 1e9f, 1e-9f}};
+        float[][] decoded = new float[2][times.length];
+        TimeSeriesCodec.decode(TimeSeriesCodec.encode(times, columns, times.length), new long[times.length], decoded);
+        for (int c = 0; c < columns.length; c++) assertArrayEquals(columns[c], decoded[c], 0f);
+    }
+
+    private static void assertRoundTrip(long[] times) {
+        float[][] columns = {new float[times.length]};
+        TimeSeriesCodec.Block block = TimeSeriesCodec.encode(times, columns, times.length);
+        long[] decoded = new long[times.length];
+        TimeSeriesCodec.decode(block, decoded, new float[][]{new float[times.length]});
+        assertArrayEquals(times, decoded);
+        assertEquals(times[times.length - 1], block.lastTime);
+    }
+}
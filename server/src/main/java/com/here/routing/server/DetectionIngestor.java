@@ -0,0 +1,123 @@
+package com.here.routing.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Folds drone detections into the bin's points. A detection of the same type and title
+ * within a few metres of an existing point is a repeat sighting: it bumps that point's
+ * {@code hits}, {@code lastSeen} and description instead of adding a duplicate. Candidates
+ * are found through a geohash index over the points, so a detection costs a lookup in nine
+ * small cells rather than a scan of the whole feed. Not thread-safe; the owner serialises
+ * access.
+ */
+public class DetectionIngestor {
+    // Precision 8 cells are about 38 x 19 m, comfortably larger than the merge radius
+    private static final int PRECISION = 8;
+    private static final double MERGE_RADIUS_METERS = 15;
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    public static class Result {
+        public final JsonObject entry;
+        public final boolean merged;
+
+        Result(JsonObject entry, boolean merged) {
+            this.entry = entry;
+            this.merged = merged;
+        }
+    }
+
+    private final Map<String, List<JsonObject>> byCell = new HashMap<>();
+
+    /** Re-indexes after the points were replaced wholesale. */
+    public void rebuild(JsonArray points) {
+        byCell.clear();
+        for (JsonElement point : points) index(point.getAsJsonObject());
+    }
+
+    /**
+     * Merges a detection ({@code type, title, description, latitude, longitude} and an
+     * optional {@code id}) into the indexed points. A new entry is returned unmerged and still
+     * has to be added to the points by the caller.
+     */
+    public Result ingest(JsonObject detection, long now) {
+        String type = detection.get("type").getAsString();
+        String title = detection.get("title").getAsString();
+        String description = detection.has("description") ? detection.get("description").getAsString() : "";
+        double latitude = detection.get("latitude").getAsDouble();
+        double longitude = detection.get("longitude").getAsDouble();
+
+        JsonObject match = nearestMatch(type, title, latitude, longitude);
+        if (match != null) {
+            int hits = match.has("hits") ? match.get("hits").getAsInt() : 1;
+            match.addProperty("hits", hits + 1);
+            match.addProperty("lastSeen", now);
+            // Sensor readings change between sightings, keep the latest
+            match.addProperty("description", description);
+            return new Result(match, true);
+        }
+
+        JsonObject coordinates = new JsonObject();
+        coordinates.addProperty("latitude", latitude);
+        coordinates.addProperty("longitude", longitude);
+
+        JsonObject entry = new JsonObject();
+        entry.addProperty("id", detection.has("id") ? detection.get("id").getAsString() : UUID.randomUUID().toString());
+        entry.addProperty("type", type);
+        entry.addProperty("title", title);
+        entry.addProperty("description", description);
+        entry.add("coordinates", coordinates);
+        entry.addProperty("userSubmitted", false);
+        entry.addProperty("hits", 1);
+        entry.addProperty("lastSeen", now);
+        index(entry);
+        return new Result(entry, false);
+    }
+
+    private JsonObject nearestMatch(String type, String title, double latitude, double longitude) {
+        JsonObject nearest = null;
+        double nearestMeters = MERGE_RADIUS_METERS;
+        for (String cell : Geohash.cellsAround(latitude, longitude, PRECISION)) {
+            List<JsonObject> candidates = byCell.get(cell);
+            if (candidates == null) continue;
+            for (JsonObject candidate : candidates) {
+                if (!type.equals(candidate.get("type").getAsString())
+                        || !title.equals(candidate.get("title").getAsString())) continue;
+                JsonObject coordinates = candidate.getAsJsonObject("coordinates");
+                double meters = distanceMeters(latitude, longitude,
+                        coordinates.get("latitude").getAsDouble(), coordinates.get("longitude").getAsDouble());
+                if (meters <= nearestMeters) {
+                    nearest = candidate;
+                    nearestMeters = meters;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    // Equirectangular approximation, plenty for a merge radius of a few metres
+    private static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    private void index(JsonObject point) {
+        JsonObject coordinates = point.getAsJsonObject("coordinates");
+        String cell = Geohash.encode(coordinates.get("latitude").getAsDouble(),
+                coordinates.get("longitude").getAsDouble(), PRECISION);
+        List<JsonObject> points = byCell.get(cell);
+        if (points == null) {
+            points = new ArrayList<>();
+            byCell.put(cell, points);
+        }
+        points.add(point);
+    }
+}
@@ -0,0 +1,584 @@
+package com.here.routing.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Self-hosted replacement for the JsonBin endpoint, run with {@code ./gradlew :server:run} or
+ * started in-process by tests. Serves a single bin over minimal HTTP/1.1: GET returns
+ * {@code {"record": {"points": [...]}}} with an ETag and honours If-None-Match, PUT replaces
+ * the points. Connections are kept alive and responses are gzipped when asked for.
+ *
+ * It is also the push relay: {@code GET <bin>/events} is a server-sent event stream that
+ * carries an {@code add} or {@code remove} event, with the point as data, for every point a
+ * write changed. Events are numbered, and a reconnecting client that sends Last-Event-ID gets
+ * the ones it missed replayed from a short backlog, or a {@code reset} event if they are no
+ * longer there. Events are written by a single broadcaster thread, never under the lock.
+ *
+ * Drones report through {@code POST <bin>/detections} with a small JSON detection instead of
+ * rewriting the bin; see {@link DetectionIngestor} for how repeats are merged.
+ *
+ * Clients that enabled delta sync push and pull operations on {@code <bin>/sync}, as spoken by
+ * the app's {@code HttpSyncTransport}. A {@link LocalSyncServer} decides which are accepted,
+ * and those are applied to the points so plain fetches see them too.
+ *
+ * With a master key set, every request has to carry it in {@code X-Master-Key}, the header
+ * the app and the drone sketch already send to JsonBin.
+ */
+public class LocalBinServer {
+    private static final Logger LOG = Logger.getLogger(LocalBinServer.class.getName());
+    private static final int DEFAULT_PORT = 8080;
+    private static final int EVENT_BACKLOG = 256;
+    private static final long HEARTBEAT_SECONDS = 15;
+
+    // Larger bodies are refused rather than buffered
+    private static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // Writes every event stream, in publish order; also sends the heartbeats
+    private final ScheduledExecutorService broadcaster = Executors.newSingleThreadScheduledExecutor();
+    private final DetectionIngestor ingestor = new DetectionIngestor();
+    private final LocalSyncServer syncServer = new LocalSyncServer();
+    // Null when requests need no key
+    private final byte[] masterKey;
+    private JsonArray points = new JsonArray();
+    private long version = 1;
+    private int connections, requests, notModified;
+
+    // Guarded by this
+    private final ArrayDeque<Event> backlog = new ArrayDeque<>();
+    private long lastEventId;
+    // Broadcaster thread only
+    private final List<OutputStream> subscribers = new ArrayList<>();
+
+    private static class Event {
+        final long id;
+        final byte[] frame;
+
+        Event(long id, String name, String data) {
+            this.id = id;
+            this.frame = ("id: " + id + "\nevent: " + name + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /** A server on a free loopback port without a key, for tests. */
+    public LocalBinServer() throws IOException {
+        this(InetAddress.getLoopbackAddress(), 0, null);
+    }
+
+    /** Binds to the given address and port, e.g. the LAN address so drones can reach it. */
+    public LocalBinServer(InetAddress address, int port, String masterKey) throws IOException {
+        this.masterKey = masterKey == null || masterKey.isEmpty() ? null : masterKey.getBytes(StandardCharsets.UTF_8);
+        serverSocket = new ServerSocket(port, 50, address);
+        executor.execute(this::acceptLoop);
+        // Comment frames keep idle streams from hitting the client's read timeout
+        byte[] ping = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+        broadcaster.scheduleAtFixedRate(() -> broadcast(ping), HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs the server until the process is killed. Arguments are the port (default 8080) and the
+     * address to bind (default all); the master key is read from {@code BIN_MASTER_KEY}.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        InetAddress address = args.length > 1 ? InetAddress.getByName(args[1]) : null;
+        String key = System.getenv("BIN_MASTER_KEY");
+        if (key == null || key.isEmpty()) LOG.warning("BIN_MASTER_KEY is not set, anyone who can connect can write");
+        LocalBinServer server = new LocalBinServer(address, port, key);
+        LOG.info("Serving " + server.getUrl());
+    }
+
+    /** URL of the bin, to be passed to the app's {@code JsonApi.setBinUrl}. */
+    public String getUrl() {
+        return "http://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/v3/b/local";
+    }
+
+    public synchronized void setPoints(JsonArray points) {
+        replacePoints(points.deepCopy());
+    }
+
+    public synchronized String getStats() {
+        return "connections=" + connections + " requests=" + requests + " notModified=" + notModified
+                + " events=" + lastEventId;
+    }
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not close server socket", e);
+        }
+        broadcaster.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                synchronized (this) { connections++; }
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) LOG.log(Level.SEVERE, "Accept failed", e);
+            }
+        }
+    }
+
+    // Handles requests on one connection until the client closes it
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null && !requestLine.isEmpty()) {
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                    }
+                }
+                String[] request = requestLine.split(" ");
+                int length = parseLength(headers.get("content-length"));
+                if (request.length < 2 || length < 0) {
+                    // The rest of the stream cannot be framed, so answer and drop the connection
+                    respond(out, 400, null, null, false);
+                    return;
+                }
+                byte[] body = new byte[length];
+                for (int read = 0; read < body.length; ) {
+                    int n = in.read(body, read, body.length - read);
+                    if (n < 0) return;
+                    read += n;
+                }
+                if (!isAuthorized(headers)) {
+                    synchronized (this) { requests++; }
+                    respond(out, 401, null, null, false);
+                    continue;
+                }
+                if ("GET".equals(request[0]) && request[1].endsWith("/events")) {
+                    stream(headers, in, out);
+                    return;
+                }
+                if ("POST".equals(request[0]) && request[1].endsWith("/detections")) {
+                    ingest(body, out);
+                    continue;
+                }
+                if (request[1].contains("/sync/")) {
+                    sync(request[0], request[1], body, out);
+                    continue;
+                }
+                handle(request[0], headers, body, out);
+                if ("close".equalsIgnoreCase(headers.get("connection"))) return;
+            }
+        } catch (IOException e) {
+            LOG.fine("Connection ended: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Only this connection is dropped, the pool thread lives on
+            LOG.log(Level.SEVERE, "Request failed", e);
+        }
+    }
+
+    private boolean isAuthorized(Map<String, String> headers) {
+        if (masterKey == null) return true;
+        String key = headers.get("x-master-key");
+        // Constant time, so the key cannot be guessed byte by byte from response timings
+        return key != null && MessageDigest.isEqual(masterKey, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handle(String method, Map<String, String> headers, byte[] body, OutputStream out) throws IOException {
+        JsonArray update = null;
+        int error = 0;
+        if ("PUT".equals(method)) {
+            update = parsePoints(headers, body);
+            if (update == null) error = 400;
+        } else if (!"GET".equals(method)) {
+            error = 405;
+        }
+
+        String etag = null;
+        byte[] document = null;
+        synchronized (this) {
+            requests++;
+            if (error == 0) {
+                if (update != null) replacePoints(update);
+                etag = "\"" + version + "\"";
+                if ("GET".equals(method) && etag.equals(headers.get("if-none-match"))) {
+                    notModified++;
+                } else {
+                    JsonObject record = new JsonObject();
+                    record.add("points", points);
+                    JsonObject root = new JsonObject();
+                    root.add("record", record);
+                    document = root.toString().getBytes(StandardCharsets.UTF_8);
+                }
+            }
+        }
+        // Written outside the lock so a slow client cannot stall the others
+        if (error != 0) {
+            respond(out, error, null, null, false);
+        } else if (document == null) {
+            respond(out, 304, etag, null, false);
+        } else {
+            String acceptEncoding = headers.get("accept-encoding");
+            respond(out, 200, etag, document, acceptEncoding != null && acceptEncoding.contains("gzip"));
+        }
+    }
+
+    // Points of a PUT body, or null unless it is a bin document whose points all have coordinates
+    private static JsonArray parsePoints(Map<String, String> headers, byte[] body) {
+        JsonElement root;
+        try {
+            InputStream bodyIn = new ByteArrayInputStream(body);
+            if ("gzip".equalsIgnoreCase(headers.get("content-encoding"))) bodyIn = new GZIPInputStream(bodyIn);
+            root = JsonParser.parseReader(new InputStreamReader(bodyIn, StandardCharsets.UTF_8));
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+        if (!root.isJsonObject()) return null;
+        JsonElement points = root.getAsJsonObject().get("points");
+        if (points == null) return new JsonArray();
+        if (!points.isJsonArray()) return null;
+        for (JsonElement poi : points.getAsJsonArray()) {
+            if (!poi.isJsonObject() || !isValidPoint(poi.getAsJsonObject())) return null;
+        }
+        return points.getAsJsonArray();
+    }
+
+    private static boolean isValidPoint(JsonObject poi) {
+        if (!isString(poi, "type") || !isString(poi, "title")) return false;
+        JsonElement coordinates = poi.get("coordinates");
+        return coordinates != null && coordinates.isJsonObject()
+                && isNumber(coordinates.getAsJsonObject(), "latitude") && isNumber(coordinates.getAsJsonObject(), "longitude");
+    }
+
+    private static boolean isValidDetection(JsonObject detection) {
+        return isString(detection, "type") && isString(detection, "title")
+                && isNumber(detection, "latitude") && isNumber(detection, "longitude")
+                && (!detection.has("description") || isString(detection, "description"))
+                && (!detection.has("id") || isString(detection, "id"));
+    }
+
+    private static boolean isString(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isString();
+    }
+
+    private static boolean isNumber(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber();
+    }
+
+    // A push body: a clientId and operations that each name their id, kind and POI, with the
+    // point itself on an ADD
+    private static boolean isValidPush(JsonObject push) {
+        if (!isString(push, "clientId")) return false;
+        JsonElement operations = push.get("operations");
+        if (operations == null || !operations.isJsonArray()) return false;
+        for (JsonElement element : operations.getAsJsonArray()) {
+            if (!element.isJsonObject()) return false;
+            JsonObject op = element.getAsJsonObject();
+            if (!isString(op, "opId") || !isString(op, "poiId") || !isString(op, "kind")) return false;
+            for (String number : new String[]{"baseRevision", "hits", "lastSeen"}) {
+                if (op.has(number) && !isNumber(op, number)) return false;
+            }
+            String kind = op.get("kind").getAsString();
+            if ("ADD".equals(kind)) {
+                if (!isString(op, "type") || !isString(op, "title") || !isNumber(op, "latitude") || !isNumber(op, "longitude")) return false;
+            } else if (!"REMOVE".equals(kind)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Content-Length as sent, 0 if absent, -1 if unusable
+    private static int parseLength(String header) {
+        if (header == null) return 0;
+        try {
+            int length = Integer.parseInt(header.trim());
+            return length <= MAX_BODY_BYTES ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void ingest(byte[] body, OutputStream out) throws IOException {
+        JsonObject detection = null;
+        try {
+            JsonElement parsed = JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+            if (parsed.isJsonObject() && isValidDetection(parsed.getAsJsonObject())) detection = parsed.getAsJsonObject();
+        } catch (JsonParseException e) {
+            // Answered below like any other invalid detection
+        }
+        if (detection == null) {
+            synchronized (this) { requests++; }
+            respond(out, 400, null, null, false);
+            return;
+        }
+        JsonObject response;
+        synchronized (this) {
+            requests++;
+            response = ingestDetection(detection);
+        }
+        respond(out, 200, null, response.toString().getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    private void sync(String method, String path, byte[] body, OutputStream out) throws IOException {
+        String response;
+        try {
+            if ("POST".equals(method) && path.endsWith("/sync/push")) {
+                JsonElement push = JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+                if (!push.isJsonObject() || !isValidPush(push.getAsJsonObject())) throw new JsonParseException("Incomplete push");
+                synchronized (this) {
+                    requests++;
+                    response = applyPush(push.getAsJsonObject()).toString();
+                }
+            } else if ("GET".equals(method) && path.contains("/sync/pull?since=")) {
+                long since = Long.parseLong(path.substring(path.indexOf("?since=") + 7));
+                synchronized (this) {
+                    requests++;
+                    response = syncServer.pull(since).toString();
+                }
+            } else {
+                respond(out, 405, null, null, false);
+                return;
+            }
+        } catch (JsonParseException | NumberFormatException e) {
+            respond(out, 400, null, null, false);
+            return;
+        }
+        respond(out, 200, null, response.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    // Applies newly accepted operations to the points; replayed ones were applied when first accepted
+    private JsonObject applyPush(JsonObject push) {
+        long before = syncServer.getRevision();
+        JsonObject result = syncServer.push(push.get("clientId").getAsString(), push.getAsJsonArray("operations"));
+        if (syncServer.getRevision() == before) return result;
+
+        Map<String, JsonElement> pointsById = new LinkedHashMap<>();
+        for (JsonElement poi : points) pointsById.put(idOf(poi.getAsJsonObject()), poi);
+        for (JsonElement element : result.getAsJsonArray("accepted")) {
+            JsonObject op = element.getAsJsonObject();
+            if (op.get("revision").getAsLong() <= before) continue;
+            String poiId = op.get("poiId").getAsString();
+            if (LocalSyncServer.isAdd(op)) pointsById.put(poiId, toPoi(op));
+            else pointsById.remove(poiId);
+        }
+        JsonArray updated = new JsonArray(pointsById.size());
+        for (JsonElement poi : pointsById.values()) updated.add(poi);
+        replacePoints(updated);
+        return result;
+    }
+
+    // The bin entry an ADD puts in place
+    private static JsonObject toPoi(JsonObject op) {
+        JsonObject coordinates = new JsonObject();
+        coordinates.add("latitude", op.get("latitude"));
+        coordinates.add("longitude", op.get("longitude"));
+
+        JsonObject poi = new JsonObject();
+        poi.add("id", op.get("poiId"));
+        poi.add("type", op.get("type"));
+        poi.add("title", op.get("title"));
+        poi.addProperty("description", op.has("description") ? op.get("description").getAsString() : "");
+        poi.add("coordinates", coordinates);
+        poi.addProperty("userSubmitted", op.has("userSubmitted") && op.get("userSubmitted").getAsBoolean());
+        if (op.has("hits") && op.get("hits").getAsInt() > 1) poi.add("hits", op.get("hits"));
+        if (op.has("lastSeen") && op.get("lastSeen").getAsLong() != 0) poi.add("lastSeen", op.get("lastSeen"));
+        return poi;
+    }
+
+    // Id of a bin entry; must derive the same ids for older entries as the app's PointOfInterestDeserializer
+    private static String idOf(JsonObject poi) {
+        if (poi.has("id")) return poi.get("id").getAsString();
+        JsonObject coordinates = poi.getAsJsonObject("coordinates");
+        String key = poi.get("type").getAsString() + "|" + poi.get("title").getAsString()
+                + "|" + coordinates.get("latitude").getAsDouble() + "|" + coordinates.get("longitude").getAsDouble();
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /** Adds or merges a detection; returns its id and hits. */
+    public synchronized JsonObject ingestDetection(JsonObject detection) {
+        DetectionIngestor.Result result = ingestor.ingest(detection, System.currentTimeMillis());
+        if (!result.merged) points.add(result.entry);
+        version++;
+        // Clients treat an add for a known id as an update
+        publish("add", result.entry);
+
+        JsonObject response = new JsonObject();
+        response.add("id", result.entry.get("id"));
+        response.add("hits", result.entry.get("hits"));
+        return response;
+    }
+
+    // Publishes what changed between the old and new points by id, removals first
+    private void replacePoints(JsonArray updated) {
+        Map<String, JsonElement> before = new HashMap<>();
+        for (JsonElement poi : points) before.put(idOf(poi.getAsJsonObject()), poi);
+        Map<String, JsonElement> after = new HashMap<>();
+        for (JsonElement poi : updated) after.put(idOf(poi.getAsJsonObject()), poi);
+
+        for (Map.Entry<String, JsonElement> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey())) publish("remove", entry.getValue());
+        }
+        // An edited point goes out as an add, which clients apply as an update
+        for (Map.Entry<String, JsonElement> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) publish("add", entry.getValue());
+        }
+        points = updated;
+        ingestor.rebuild(points);
+        version++;
+    }
+
+    // Called with the lock held; the frame is only queued for the broadcaster
+    private void publish(String name, JsonElement poi) {
+        Event event = new Event(++lastEventId, name, poi.toString());
+        backlog.addLast(event);
+        if (backlog.size() > EVENT_BACKLOG) backlog.removeFirst();
+        broadcaster.execute(() -> broadcast(event.frame));
+    }
+
+    // Broadcaster thread only
+    private void broadcast(byte[] frame) {
+        Iterator<OutputStream> it = subscribers.iterator();
+        while (it.hasNext()) {
+            OutputStream subscriber = it.next();
+            try {
+                subscriber.write(frame);
+                subscriber.flush();
+            } catch (IOException e) {
+                closeQuietly(subscriber);
+                it.remove();
+            }
+        }
+    }
+
+    // Holds the connection open as an event stream until the client goes away
+    private void stream(Map<String, String> headers, InputStream in, OutputStream out) throws IOException {
+        long since = -1;
+        String lastSeen = headers.get("last-event-id");
+        if (lastSeen != null) {
+            try {
+                since = Long.parseLong(lastSeen.trim());
+            } catch (NumberFormatException e) {
+                // Not one of ours, so the client cannot have seen anything yet
+                since = 0;
+            }
+        }
+
+        ByteArrayOutputStream opening = new ByteArrayOutputStream();
+        opening.write(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n"
+                + "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        synchronized (this) {
+            requests++;
+            if (since >= 0) {
+                long oldest = backlog.isEmpty() ? lastEventId + 1 : backlog.getFirst().id;
+                if (since + 1 < oldest || since > lastEventId) {
+                    // Missed more than the backlog holds; the client has to refetch the bin
+                    opening.write(new Event(lastEventId, "reset", "{}").frame);
+                } else {
+                    for (Event event : backlog) if (event.id > since) opening.write(event.frame);
+                }
+            }
+            // Queued under the lock, so no event published after the replay is lost or sent twice
+            byte[] replay = opening.toByteArray();
+            broadcaster.execute(() -> {
+                try {
+                    out.write(replay);
+                    out.flush();
+                    subscribers.add(out);
+                } catch (IOException e) {
+                    closeQuietly(out);
+                }
+            });
+        }
+        try {
+            while (in.read() != -1) {
+                // Clients do not send anything on a stream; wait for them to close it
+            }
+        } finally {
+            broadcaster.execute(() -> subscribers.remove(out));
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void respond(OutputStream out, int code, String etag, byte[] body, boolean gzip) throws IOException {
+        if (body == null) body = new byte[0];
+        if (gzip && body.length > 0) body = gzip(body);
+
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(code).append(code == 200 ? " OK" : code == 304 ? " Not Modified" : code == 401 ? " Unauthorized" : " Error").append("\r\n");
+        if (etag != null) head.append("ETag: ").append(etag).append("\r\n");
+        if (code != 304) {
+            head.append("Content-Type: application/json\r\n");
+            if (gzip && body.length > 0) head.append("Content-Encoding: gzip\r\n");
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("Connection: keep-alive\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        if (code != 304) out.write(body);
+        out.flush();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+            zip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
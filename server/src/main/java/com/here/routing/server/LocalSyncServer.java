@@ -0,0 +1,99 @@
+package com.here.routing.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server side of the delta sync protocol the app's {@code HttpSyncTransport} speaks. Keeps an
+ * ordered operation log and the live POI set it produces. Operations are kept as the JSON the
+ * client sent, with the accepted revision added, so fields the server does not interpret
+ * reach the other clients unchanged.
+ *
+ * An operation conflicts if another client changed the same POI after the operation's base
+ * revision, i.e. without having seen that change, so writers never overwrite each other
+ * blindly. Otherwise an ADD of an existing id is an update, the same upsert as a write to
+ * the bin, and a REMOVE conflicts only if the POI is already gone. Pushing an operation that
+ * was already accepted, e.g. a retry after a lost response, accepts it again without applying
+ * it twice. Not thread-safe; the owner serialises access.
+ */
+public class LocalSyncServer {
+    private final List<JsonObject> log = new ArrayList<>();
+    private final Map<String, JsonObject> live = new HashMap<>();
+    // Last accepted operation per POI id, including removals
+    private final Map<String, JsonObject> lastChange = new HashMap<>();
+    private final Map<String, JsonObject> acceptedById = new HashMap<>();
+    private long revision;
+
+    /**
+     * Applies {@code operations} in order. Returns {@code {revision, accepted, conflicts}};
+     * every accepted operation carries its {@code revision}.
+     */
+    public JsonObject push(String clientId, JsonArray operations) {
+        JsonArray accepted = new JsonArray(), conflicts = new JsonArray();
+        for (JsonElement element : operations) {
+            JsonObject op = element.getAsJsonObject();
+            String opId = op.get("opId").getAsString();
+            JsonObject previous = acceptedById.get(opId);
+            if (previous != null) {
+                accepted.add(previous);
+                continue;
+            }
+            if (isConflict(clientId, op)) {
+                conflicts.add(op);
+                continue;
+            }
+
+            op = op.deepCopy();
+            op.addProperty("clientId", clientId);
+            op.addProperty("revision", ++revision);
+            String poiId = op.get("poiId").getAsString();
+            if (isAdd(op)) live.put(poiId, op);
+            else live.remove(poiId);
+            lastChange.put(poiId, op);
+            acceptedById.put(opId, op);
+            log.add(op);
+            accepted.add(op);
+        }
+
+        JsonObject result = new JsonObject();
+        result.addProperty("revision", revision);
+        result.add("accepted", accepted);
+        result.add("conflicts", conflicts);
+        return result;
+    }
+
+    private boolean isConflict(String clientId, JsonObject op) {
+        long baseRevision = op.has("baseRevision") ? op.get("baseRevision").getAsLong() : 0;
+        // A base from the future was seen on some other server, nothing it says can be trusted
+        if (baseRevision > revision) return true;
+        String poiId = op.get("poiId").getAsString();
+        JsonObject previous = lastChange.get(poiId);
+        if (previous != null && previous.get("revision").getAsLong() > baseRevision
+                && !clientId.equals(previous.get("clientId").getAsString())) return true;
+        return !isAdd(op) && !live.containsKey(poiId);
+    }
+
+    static boolean isAdd(JsonObject op) {
+        return "ADD".equals(op.get("kind").getAsString());
+    }
+
+    /** Returns {@code {revision, operations}} with every accepted operation after {@code sinceRevision}. */
+    public JsonObject pull(long sinceRevision) {
+        JsonArray operations = new JsonArray();
+        // Revisions are dense and start at 1, so the log index is revision - 1
+        for (int i = (int) Math.max(0, sinceRevision); i < log.size(); i++) operations.add(log.get(i));
+
+        JsonObject result = new JsonObject();
+        result.addProperty("revision", revision);
+        result.add("operations", operations);
+        return result;
+    }
+
+    public long getRevision() { return revision; }
+}
@@ -0,0 +1,75 @@
+package com.here.routing.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LocalSyncServerTest {
+    private final LocalSyncServer server = new LocalSyncServer();
+
+    @Test
+    public void addOfExistingIdFromSameClientIsAnUpdate() {
+        assertAccepted(push("a", add("op1", "p", 0, "Fire")));
+        assertAccepted(push("a", add("op2", "p", 0, "Big fire")));
+        JsonArray log = server.pull(0).getAsJsonArray("operations");
+        assertEquals("Big fire", log.get(1).getAsJsonObject().get("title").getAsString());
+    }
+
+    @Test
+    public void addOfExistingIdWithCurrentBaseIsAnUpdate() {
+        assertAccepted(push("a", add("op1", "p", 0, "Fire")));
+        assertAccepted(push("b", add("op2", "p", 1, "Big fire")));
+    }
+
+    @Test
+    public void addOverAnUnseenChangeConflicts() {
+        assertAccepted(push("a", add("op1", "p", 0, "Fire")));
+        JsonObject result = push("b", add("op2", "p", 0, "Flood"));
+        assertEquals(0, result.getAsJsonArray("accepted").size());
+        assertEquals(1, result.getAsJsonArray("conflicts").size());
+    }
+
+    @Test
+    public void resentOperationIsAcceptedOnce() {
+        JsonObject op = add("op1", "p", 0, "Fire");
+        assertAccepted(push("a", op));
+        assertAccepted(push("a", op));
+        assertEquals(1, server.getRevision());
+    }
+
+    @Test
+    public void removeOfMissingPoiConflicts() {
+        JsonObject remove = new JsonObject();
+        remove.addProperty("opId", "op1");
+        remove.addProperty("kind", "REMOVE");
+        remove.addProperty("poiId", "p");
+        assertEquals(1, push("a", remove).getAsJsonArray("conflicts").size());
+    }
+
+    private JsonObject push(String clientId, JsonObject op) {
+        JsonArray operations = new JsonArray();
+        operations.add(op);
+        return server.push(clientId, operations);
+    }
+
+    private static void assertAccepted(JsonObject result) {
+        assertEquals(1, result.getAsJsonArray("accepted").size());
+        assertEquals(0, result.getAsJsonArray("conflicts").size());
+    }
+
+    private static JsonObject add(String opId, String poiId, long baseRevision, String title) {
+        JsonObject op = new JsonObject();
+        op.addProperty("opId", opId);
+        op.addProperty("kind", "ADD");
+        op.addProperty("poiId", poiId);
+        op.addProperty("baseRevision", baseRevision);
+        op.addProperty("type", "hazard");
+        op.addProperty("title", title);
+        op.addProperty("latitude", 1.0);
+        op.addProperty("longitude", 2.0);
+        return op;
+    }
+}